@@ -0,0 +1,135 @@
+package ePortfolio;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The CorporateAction class represents a stock split, a consolidation or a distribution
+ * announced for one symbol, effective on a given date.
+ * <p>
+ * A split or consolidation is given as a ratio of new units to old units, for example 2:1 for a
+ * two-for-one split or 1:10 for a one-for-ten consolidation. A distribution is given as cash per unit.
+ */
+
+public class CorporateAction {
+
+    /** The kinds of corporate action. */
+    public enum Type { SPLIT, CONSOLIDATION, DISTRIBUTION }
+
+    private final Type type;
+    private final String symbol;
+    private final double newUnits;
+    private final double oldUnits;
+    private final double cashPerUnit;
+    private final LocalDate effectiveDate;
+
+    /**
+     * Constructor to initialize the corporate action with its properties.
+     *
+     * @param type The kind of action.
+     * @param symbol The symbol of the investment affected.
+     * @param newUnits For splits and consolidations, the units held after the action per oldUnits units.
+     * @param oldUnits For splits and consolidations, the units held before the action.
+     * @param cashPerUnit For distributions, the cash paid per unit held.
+     * @param effectiveDate The date the action takes effect.
+     */
+    public CorporateAction(Type type, String symbol, double newUnits, double oldUnits, double cashPerUnit, LocalDate effectiveDate) {
+        this.type = type;
+        this.symbol = symbol;
+        this.newUnits = newUnits;
+        this.oldUnits = oldUnits;
+        this.cashPerUnit = cashPerUnit;
+        this.effectiveDate = effectiveDate;
+    }
+
+    /**
+     * Parses an action from one line of an action file. The accepted formats are
+     * "split &lt;symbol&gt; &lt;new&gt;:&lt;old&gt; &lt;date&gt;", "consolidation &lt;symbol&gt; &lt;new&gt;:&lt;old&gt; &lt;date&gt;"
+     * and "distribution &lt;symbol&gt; &lt;cashPerUnit&gt; &lt;date&gt;", with dates as yyyy-mm-dd.
+     * A split must have new &gt; old (2:1) and a consolidation new &lt; old (1:10).
+     *
+     * @param line The line to parse.
+     * @return The action.
+     * @throws IllegalArgumentException If the line is not a valid action.
+     */
+    public static CorporateAction parse(String line) {
+        String[] token = line.trim().split("\\s+");
+        if (token.length != 4) {
+            throw new IllegalArgumentException("Invalid corporate action: " + line);
+        }
+
+        try {
+            Type type = Type.valueOf(token[0].toUpperCase());
+            LocalDate effectiveDate = LocalDate.parse(token[3]);
+            if (type == Type.DISTRIBUTION) {
+                double cashPerUnit = Double.parseDouble(token[2]);
+                if (!(cashPerUnit >= 0)) {
+                    throw new IllegalArgumentException("Cash per unit cannot be negative: " + line);
+                }
+                return new CorporateAction(type, token[1], 1, 1, cashPerUnit, effectiveDate);
+            }
+
+            String[] ratio = token[2].split(":");
+            double newUnits = Double.parseDouble(ratio[0]);
+            double oldUnits = ratio.length > 1 ? Double.parseDouble(ratio[1]) : 1;
+            if (ratio.length > 2 || !(newUnits > 0) || !(oldUnits > 0)) {
+                throw new IllegalArgumentException("Ratio must be two positive numbers: " + line);
+            }
+            // A split adds units and a consolidation removes them; a ratio the other way is a typo
+            if (type == Type.SPLIT && !(newUnits > oldUnits)) {
+                throw new IllegalArgumentException("A split must give more new units than old: " + line);
+            }
+            if (type == Type.CONSOLIDATION && !(newUnits < oldUnits)) {
+                throw new IllegalArgumentException("A consolidation must give fewer new units than old: " + line);
+            }
+            return new CorporateAction(type, token[1], newUnits, oldUnits, 0, effectiveDate);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid corporate action: " + line);
+        }
+    }
+
+    /**
+     * Returns the number of units held after the action for each unit held before it.
+     *
+     * @return The unit ratio; 1 for distributions.
+     */
+    public double getRatio() {
+        return newUnits / oldUnits;
+    }
+
+    /**
+     * Returns a key identifying the action by type, symbol, ratio or cash per unit, and effective date.
+     * Two actions with the same key are the same announcement, for example 2:1 and 4:2 splits on one date.
+     *
+     * @return The key.
+     */
+    String key() {
+        String amount = type == Type.DISTRIBUTION ? String.format("%.4f", cashPerUnit) : Double.toString(getRatio());
+        return type + " " + symbol.toLowerCase() + " " + amount + " " + effectiveDate;
+    }
+
+    // Getters
+    public Type getType() { return type; }
+    public String getSymbol() { return symbol; }
+    public double getCashPerUnit() { return cashPerUnit; }
+    public LocalDate getEffectiveDate() { return effectiveDate; }
+
+    /**
+     * Provides a string representation of the action, in the same format it is parsed from.
+     *
+     * @return A string representation of the action.
+     */
+    @Override
+    public String toString() {
+        String amount = type == Type.DISTRIBUTION ? String.format("%.4f", cashPerUnit)
+                : formatUnits(newUnits) + ":" + formatUnits(oldUnits);
+        return type.name().toLowerCase() + " " + symbol + " " + amount + " " + effectiveDate;
+    }
+
+    /**
+     * Formats a unit count without a trailing ".0" for whole numbers.
+     */
+    private static String formatUnits(double units) {
+        return units == Math.rint(units) ? Long.toString((long) units) : Double.toString(units);
+    }
+}
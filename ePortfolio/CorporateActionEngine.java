@@ -0,0 +1,246 @@
+package ePortfolio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+
+/**
+ * The CorporateActionEngine class applies splits, consolidations and distributions to a portfolio.
+ * <p>
+ * The affected investments are looked up once and their quantity, price and book value are
+ * copied into primitive arrays. Every action is then applied in a single pass over those arrays in
+ * order of effective date, and the results are written back to the investments at the end.
+ * Only investments that end with no units touch the portfolio's indexes.
+ * <p>
+ * Book value is kept consistent: a split or consolidation keeps the total book value, except for
+ * fractional units paid out as cash, which take their share of the book value with them.
+ * A reinvested fund distribution adds the reinvested amount to the book value.
+ * Each applied action is appended to an audit log, but only once the portfolio has been saved, so the log
+ * never lists an action the saved file does not have. The log also records which actions were already
+ * applied: running the same action file again changes nothing.
+ * Cash paid for fractional units is a sale of those units, so its gain goes to the realized-gain ledger.
+ */
+
+public class CorporateActionEngine {
+
+    private final Portfolio portfolio;
+    private final String auditFileName;
+    /** Audit lines of actions applied since the portfolio was last saved. */
+    private final List<String> pending = new ArrayList<>();
+
+    /**
+     * Constructs an engine for the given portfolio.
+     *
+     * @param portfolio The portfolio to apply actions to.
+     * @param auditFileName The file that applied actions are appended to.
+     */
+    public CorporateActionEngine(Portfolio portfolio, String auditFileName) {
+        this.portfolio = portfolio;
+        this.auditFileName = auditFileName;
+    }
+
+    /**
+     * Applies every action effective on or before the given date, in order of effective date.
+     * Actions already applied, actions for symbols that are not held and actions dated
+     * in the future are skipped and reported. The audit lines are kept until writeAudit() is called.
+     *
+     * @param actions The actions to apply.
+     * @param today The current date; later actions are not applied yet.
+     * @return The audit lines of the applied actions.
+     * @throws IOException If the audit log cannot be read.
+     */
+    public List<String> apply(List<CorporateAction> actions, LocalDate today) throws IOException {
+        List<CorporateAction> ordered = new ArrayList<>(actions);
+        ordered.sort(Comparator.comparing(CorporateAction::getEffectiveDate));  // Stable, keeps file order per date
+
+        // Actions already in the audit log, applied but not yet saved, or repeated in this list, are applied only once
+        Set<String> applied = readApplied();
+
+        // Look up each affected investment once and give it a slot in the arrays
+        Map<String, Integer> slots = new HashMap<>();
+        List<Investment> affected = new ArrayList<>();
+        int[] slotOfAction = new int[ordered.size()];
+        for (int a = 0; a < ordered.size(); a++) {
+            CorporateAction action = ordered.get(a);
+            slotOfAction[a] = -1;
+            if (action.getEffectiveDate().isAfter(today)) {
+                System.out.println("Skipped, not yet effective: " + action);
+                continue;
+            }
+            if (applied.contains(action.key())) {
+                System.out.println("Skipped, already applied: " + action);
+                continue;
+            }
+            String key = action.getSymbol().toLowerCase();
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                Investment investment = portfolio.findInvestment(action.getSymbol());
+                if (investment == null) {
+                    System.out.println("Skipped, investment not held: " + action);
+                    continue;
+                }
+                slot = affected.size();
+                slots.put(key, slot);
+                affected.add(investment);
+            }
+            slotOfAction[a] = slot;
+            applied.add(action.key());
+        }
+
+        int size = affected.size();
+        int[] quantity = new int[size];
+        double[] price = new double[size];
+        double[] bookValue = new double[size];
+        boolean[] isFund = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            Investment investment = affected.get(i);
+            quantity[i] = investment.getQuantity();
+            price[i] = investment.getPrice();
+            bookValue[i] = investment.getBookValue();
+            isFund[i] = investment instanceof MutualFund;
+        }
+
+        // Single pass over all actions, working only on the arrays
+        List<String> audit = new ArrayList<>();
+        double totalCash = 0;
+        double[] fractionGain = new double[size];
+        boolean[] soldFraction = new boolean[size];
+        for (int a = 0; a < ordered.size(); a++) {
+            int i = slotOfAction[a];
+            if (i < 0) {
+                continue;
+            }
+            CorporateAction action = ordered.get(a);
+            int quantityBefore = quantity[i];
+            double priceBefore = price[i];
+            double bookValueBefore = bookValue[i];
+            double cash = 0;
+
+            if (action.getType() == CorporateAction.Type.DISTRIBUTION) {
+                double amount = quantity[i] * action.getCashPerUnit();
+                if (isFund[i] && price[i] > 0) {
+                    // Reinvest in whole units; the remainder is paid out
+                    int units = (int) Math.floor(amount / price[i]);
+                    quantity[i] += units;
+                    bookValue[i] += units * price[i];
+                    cash = amount - units * price[i];
+                } else {
+                    cash = amount;
+                }
+            } else if (quantity[i] > 0) {
+                double exactUnits = quantity[i] * action.getRatio();
+                int wholeUnits = (int) Math.floor(exactUnits + 1e-9);
+                double newPrice = price[i] / action.getRatio();
+                // Fractional units are paid out at the new price and take their share of book value
+                double fraction = Math.max(0, exactUnits - wholeUnits);
+                cash = fraction * newPrice;
+                double bookValueSold = bookValue[i] * fraction / exactUnits;
+                bookValue[i] -= bookValueSold;
+                if (fraction > 0) {
+                    fractionGain[i] += cash - bookValueSold;
+                    soldFraction[i] = true;
+                }
+                quantity[i] = wholeUnits;
+                price[i] = newPrice;
+            }
+            totalCash += cash;
+
+            audit.add(today + " applied " + action + ": quantity " + quantityBefore + " -> " + quantity[i]
+                    + ", price " + String.format("%.4f", priceBefore) + " -> " + String.format("%.4f", price[i])
+                    + ", bookValue " + String.format("%.2f", bookValueBefore) + " -> " + String.format("%.2f", bookValue[i])
+                    + ", cash paid " + String.format("%.2f", cash));
+        }
+
+        // Write the results back; positions left with no units leave the portfolio
+        for (int i = 0; i < size; i++) {
+            Investment investment = affected.get(i);
+            investment.setQuantity(quantity[i]);
+            investment.setPrice(price[i]);
+            investment.setBookValue(bookValue[i]);
+            if (soldFraction[i]) {
+                // Less than one unit was sold, so the ledger records no whole quantity
+                portfolio.recordSale(investment.getSymbol(), 0, price[i], fractionGain[i]);
+            }
+            if (quantity[i] == 0) {
+                portfolio.removeInvestment(investment);
+            }
+        }
+
+        pending.addAll(audit);
+        System.out.printf("Applied %d corporate actions to %d investments, cash paid out: $%.2f%n", audit.size(), size, totalCash);
+        return audit;
+    }
+
+    /**
+     * Appends the audit lines of the actions applied since the last call to the audit log.
+     * Call it after the portfolio has been saved.
+     *
+     * @throws IOException If the log cannot be written; the lines are kept for the next call.
+     */
+    public void writeAudit() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try (PrintWriter outputStream = new PrintWriter(new FileOutputStream(auditFileName, true))) {
+            for (String line : pending) {
+                outputStream.println(line);
+            }
+            if (outputStream.checkError()) {
+                throw new IOException("Error writing to file " + auditFileName);
+            }
+        }
+        pending.clear();
+    }
+
+
+    //helper methods
+
+    /**
+     * Reads the keys of the actions already applied from the audit log and the unsaved audit lines.
+     *
+     * @return The keys; empty if there is no log yet and nothing is pending.
+     * @throws IOException If the log exists but cannot be read.
+     */
+    private Set<String> readApplied() throws IOException {
+        Set<String> applied = new HashSet<>();
+        for (String line : pending) {
+            addKey(applied, line);
+        }
+        if (!new File(auditFileName).exists()) {
+            return applied;
+        }
+        try (Scanner inputStream = new Scanner(new FileInputStream(auditFileName))) {
+            while (inputStream.hasNextLine()) {
+                addKey(applied, inputStream.nextLine());
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Adds the key of the action in an audit line, which looks like "&lt;date&gt; applied &lt;action&gt;: quantity ...".
+     */
+    private static void addKey(Set<String> applied, String line) {
+        int start = line.indexOf(" applied ");
+        int end = line.indexOf(": ", start + 1);
+        if (start < 0 || end < 0) {
+            return;
+        }
+        try {
+            applied.add(CorporateAction.parse(line.substring(start + " applied ".length(), end)).key());
+        } catch (IllegalArgumentException e) {
+            // Not an action line, ignore it
+        }
+    }
+}
@@ -112,34 +112,69 @@ public abstract class Investment {
      * 
      * @param quantityToSell The quantity of the investment to sell.
      * @param sellPrice The price at which to sell the investment.
+     * @return The gain from the sale, or 0 if not enough units are held.
      */
-    public void sell(int quantityToSell, double sellPrice) {
+    public double sell(int quantityToSell, double sellPrice) {
         if (quantityToSell > getQuantity()) {
             System.out.println("Error: Not enough units to sell.");
-            return;
+            return 0;
         }
 
-    // Calculate the total value from the sale (includes commission)
-    double totalValue = quantityToSell * sellPrice - COMMISSION;
-    
-    // Calculate the book value of the sold units
-    double bookValueSold = (getBookValue() * quantityToSell) / getQuantity();
-    
-    // Update book value and quantity after the sale
-    setBookValue(getBookValue() - bookValueSold);
-    setQuantity(getQuantity() - quantityToSell);
-    setPrice(sellPrice);
-    setBookValueSold(bookValueSold);  // This ensures the book value sold is correctly tracked
+    double gainFromSale = applySale(quantityToSell, sellPrice);
 
     System.out.println("Quantity: " + getQuantity());
     System.out.println("Price: " + getPrice());
 
     System.out.println("BookValue :" + getBookValue());
 
-    System.out.println("Gain from sale: $" + String.format("%.2f", (totalValue - bookValueSold)));
+    System.out.println("Gain from sale: $" + String.format("%.2f", gainFromSale));
         if (getQuantity() == 0) {
             System.out.println("Investment fully sold and removed.");
         }
+        return gainFromSale;
+    }
+
+    /**
+     * Sells a portion of the investment without printing anything.
+     * The caller is responsible for checking that enough units are held.
+     * 
+     * @param quantityToSell The quantity of the investment to sell.
+     * @param sellPrice The price at which to sell the investment.
+     * @return The gain from the sale.
+     */
+    public double applySale(int quantityToSell, double sellPrice) {
+        // Calculate the total value from the sale (includes commission)
+        double totalValue = quantityToSell * sellPrice - COMMISSION;
+
+        // Calculate the book value of the sold units
+        double bookValueSold = (getBookValue() * quantityToSell) / getQuantity();
+
+        // Update book value and quantity after the sale
+        setBookValue(getBookValue() - bookValueSold);
+        setQuantity(getQuantity() - quantityToSell);
+        setPrice(sellPrice);
+        setBookValueSold(bookValueSold);  // This ensures the book value sold is correctly tracked
+
+        return totalValue - bookValueSold;
+    }
+
+    /**
+     * Calculates the amount that would be received by selling all units at the current price.
+     * Subclasses subtract their selling fees.
+     * 
+     * @return The value of the investment at the current price.
+     */
+    public double calculateSaleValue() {
+        return quantity * price;
+    }
+
+    /**
+     * Calculates the gain at the current price without printing or storing it.
+     * 
+     * @return The sale value minus the book value.
+     */
+    public double calculateUnrealizedGain() {
+        return calculateSaleValue() - bookValue;
     }
 
     // Getters and Setters
@@ -0,0 +1,121 @@
+package ePortfolio;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The InvestmentQuery class describes a search over the portfolio by symbol, name keywords and price range.
+ * Every criterion is optional: an empty symbol, no keywords, or infinite bounds match everything.
+ * The query only describes what to find; Portfolio.query decides how to find it.
+ */
+
+public class InvestmentQuery {
+
+    private final String symbol;
+    private final String[] keywords;
+    private final double lowerBound;
+    private final double upperBound;
+
+    /**
+     * Constructor to initialize the query with its criteria.
+     *
+     * @param symbol The investment symbol to search for (can be empty for no symbol search).
+     * @param keywords The keywords that must all appear in the investment name (can be empty for no name search).
+     * @param lowerBound The lower bound of the price range (use Double.NEGATIVE_INFINITY for no lower bound).
+     * @param upperBound The upper bound of the price range (use Double.POSITIVE_INFINITY for no upper bound).
+     */
+    public InvestmentQuery(String symbol, String[] keywords, double lowerBound, double upperBound) {
+        this.symbol = symbol.trim();
+        this.keywords = new String[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            this.keywords[i] = keywords[i].toLowerCase();
+        }
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * Checks whether the query restricts the symbol.
+     *
+     * @return True if a symbol was given.
+     */
+    public boolean hasSymbol() {
+        return !symbol.isEmpty();
+    }
+
+    /**
+     * Checks whether the query restricts the name.
+     *
+     * @return True if at least one keyword was given.
+     */
+    public boolean hasKeywords() {
+        return keywords.length > 0;
+    }
+
+    /**
+     * Checks whether the query restricts the price.
+     *
+     * @return True if either price bound is finite.
+     */
+    public boolean hasPriceRange() {
+        return lowerBound != Double.NEGATIVE_INFINITY || upperBound != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Checks if an investment's price falls within the price range (inclusive).
+     *
+     * @param investment The investment to check.
+     * @return True if the price is within the range.
+     */
+    public boolean matchesPrice(Investment investment) {
+        return investment.getPrice() >= lowerBound && investment.getPrice() <= upperBound;
+    }
+
+    /**
+     * Checks if every keyword appears in the name of an investment.
+     *
+     * @param investment The investment to check.
+     * @return True if all keywords appear in the name.
+     */
+    public boolean matchesKeywords(Investment investment) {
+        if (keywords.length == 0) {
+            return true;
+        }
+        List<String> nameKeywords = Arrays.asList(investment.getName().toLowerCase().split("\\s+"));
+        for (String keyword : keywords) {
+            if (!nameKeywords.contains(keyword)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks an investment against every criterion of the query. The cheap price check runs first.
+     *
+     * @param investment The investment to check.
+     * @return True if the investment matches the query.
+     */
+    public boolean matches(Investment investment) {
+        return matchesPrice(investment)
+                && (symbol.isEmpty() || investment.getSymbol().equalsIgnoreCase(symbol))
+                && matchesKeywords(investment);
+    }
+
+    // Getters
+    public String getSymbol() { return symbol; }
+    public String[] getKeywords() { return keywords.clone(); }
+    public double getLowerBound() { return lowerBound; }
+    public double getUpperBound() { return upperBound; }
+
+    /**
+     * Provides a string representation of the query.
+     *
+     * @return A string representation of the query.
+     */
+    @Override
+    public String toString() {
+        return "Symbol: " + (symbol.isEmpty() ? "any" : symbol) + ", Keywords: " + Arrays.toString(keywords)
+                + ", Price: " + lowerBound + " to " + upperBound;
+    }
+}
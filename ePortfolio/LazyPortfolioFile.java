@@ -0,0 +1,517 @@
+package ePortfolio;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The LazyPortfolioFile class gives on-demand access to the investments stored in a portfolio file.
+ * Opening the file only builds a compact index from each symbol to the byte offset of its record.
+ * Investments are read and parsed on first access and kept in a small bounded cache, while
+ * whole-portfolio operations stream through the file one record at a time.
+ * Once an investment is taken over by the portfolio it is forgotten here, so each investment has a single owner.
+ * As in readFile, a repeated symbol keeps every record: the first one is found by symbol, and the later ones
+ * are still streamed and saved.
+ */
+
+public class LazyPortfolioFile {
+
+    /** Default number of parsed investments kept in the cache. */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /** Number of lines in one record, not counting the blank separator line. */
+    private static final int RECORD_LINES = 6;
+
+    /** The portfolio file backing this index. */
+    private final File file;
+
+    /** Byte offset of each record still owned by the file, keyed by lowercased symbol, in file order. */
+    private LinkedHashMap<String, Long> offsets;
+
+    /** Byte offsets of further records for symbols already in offsets, still owned by the file. */
+    private HashSet<Long> duplicateOffsets;
+
+    /** Least recently used cache of parsed investments. */
+    private final LinkedHashMap<String, Investment> cache;
+
+    /**
+     * Constructs an index over the given file with a cache of the given size.
+     *
+     * @param file The portfolio file.
+     * @param cacheSize The maximum number of parsed investments to keep in memory.
+     */
+    private LazyPortfolioFile(File file, int cacheSize) {
+        this.file = file;
+        this.offsets = new LinkedHashMap<>();
+        this.duplicateOffsets = new HashSet<>();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Investment> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens a portfolio file in lazy mode by scanning it once for the offset of every record.
+     * No investment objects are created during the scan.
+     *
+     * @param fileName The name of the portfolio file.
+     * @param cacheSize The maximum number of parsed investments to keep in memory.
+     * @return The lazy view of the file.
+     * @throws IOException If the file cannot be read or contains an incomplete record.
+     */
+    public static LazyPortfolioFile open(String fileName, int cacheSize) throws IOException {
+        LazyPortfolioFile lazyFile = new LazyPortfolioFile(new File(fileName), cacheSize);
+
+        try (RecordReader reader = new RecordReader(new FileInputStream(lazyFile.file), 0)) {
+            long offset = reader.position();
+            String[] lines;
+            while ((lines = reader.readRecord()) != null) {
+                String type = value(lines[0]);
+                // Skip unknown types the same way readFile does
+                if (type.equalsIgnoreCase("stock") || type.equalsIgnoreCase("mutualfund")) {
+                    if (lazyFile.offsets.putIfAbsent(value(lines[1]).toLowerCase(), offset) != null) {
+                        lazyFile.duplicateOffsets.add(offset);
+                    }
+                }
+                offset = reader.position();
+            }
+        }
+        return lazyFile;
+    }
+
+    /**
+     * Returns the number of investments still owned by the file.
+     *
+     * @return The number of indexed investments, including repeated symbols.
+     */
+    public int size() {
+        return offsets.size() + duplicateOffsets.size();
+    }
+
+    /**
+     * Checks whether the file still owns more than one record for some symbol.
+     *
+     * @return True if a repeated symbol has records still owned by the file.
+     */
+    public boolean hasDuplicates() {
+        return !duplicateOffsets.isEmpty();
+    }
+
+    /**
+     * Checks whether the file still owns an investment with the given symbol.
+     *
+     * @param symbol The symbol to look up (case insensitive).
+     * @return True if the symbol is indexed, otherwise false.
+     */
+    public boolean contains(String symbol) {
+        return offsets.containsKey(symbol.toLowerCase());
+    }
+
+    /**
+     * Fetches an investment by symbol, reading it from disk on a cache miss.
+     * The returned object should be treated as read-only; use take() before modifying it.
+     *
+     * @param symbol The symbol to look up (case insensitive).
+     * @return The investment, or null if the file does not own that symbol.
+     * @throws IOException If the record cannot be read.
+     */
+    public Investment fetch(String symbol) throws IOException {
+        String key = symbol.toLowerCase();
+        Investment investment = cache.get(key);
+        if (investment != null) {
+            return investment;
+        }
+        Long offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+
+        try (RecordReader reader = new RecordReader(new FileInputStream(file), offset)) {
+            investment = parseRecord(reader.readRecord());
+        }
+        cache.put(key, investment);
+        return investment;
+    }
+
+    /**
+     * Fetches an investment and hands its ownership over to the caller.
+     * The symbol is removed from the index and the cache, so later saves take it from the caller.
+     *
+     * @param symbol The symbol to look up (case insensitive).
+     * @return The investment, or null if the file does not own that symbol.
+     * @throws IOException If the record cannot be read.
+     */
+    public Investment take(String symbol) throws IOException {
+        Investment investment = fetch(symbol);
+        if (investment != null) {
+            String key = symbol.toLowerCase();
+            offsets.remove(key);
+            cache.remove(key);
+        }
+        return investment;
+    }
+
+    /**
+     * Returns a lazily evaluated stream of the investments still owned by the file, in file order.
+     * Records are read and parsed only as the stream is consumed, and cached investments are reused.
+     * The stream holds the file open and must be closed, for example with try-with-resources.
+     *
+     * @return The stream of investments.
+     * @throws IOException If the file cannot be opened.
+     */
+    public Stream<Investment> stream() throws IOException {
+        if (size() == 0) {
+            return Stream.empty();
+        }
+        RecordReader reader = new RecordReader(new FileInputStream(file), 0);
+        Spliterator<Investment> records = new Spliterators.AbstractSpliterator<>(size(), Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Investment> action) {
+                try {
+                    long offset = reader.position();
+                    String[] lines;
+                    while ((lines = reader.readRecord()) != null) {
+                        String key = value(lines[1]).toLowerCase();
+                        Long owned = offsets.get(key);
+                        long start = offset;
+                        offset = reader.position();
+                        if (owned != null && owned == start) {
+                            Investment investment = cache.get(key);
+                            action.accept(investment != null ? investment : parseRecord(lines));
+                            return true;
+                        }
+                        if (duplicateOffsets.contains(start)) {
+                            action.accept(parseRecord(lines));
+                            return true;
+                        }
+                    }
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Opens the file now and returns a stream of the records the file owns at this moment.
+     * Unlike stream(), the returned stream works from a copy of the owned offsets and does not consult
+     * the index or cache, so it can be consumed on another thread. Because the file is already open,
+     * it keeps reading the version of the file that existed when this method was called, even if the
+     * file is rewritten later. Records taken over by the portfolio, including ones since sold, are skipped.
+     * The stream must be closed.
+     *
+     * @return The stream of investments.
+     * @throws IOException If the file cannot be opened.
+     */
+    public Stream<Investment> detachedStream() throws IOException {
+        Set<Long> owned = new HashSet<>(offsets.values());
+        owned.addAll(duplicateOffsets);
+        RecordReader reader = new RecordReader(new FileInputStream(file), 0);
+        Spliterator<Investment> records = new Spliterators.AbstractSpliterator<>(owned.size(), Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Investment> action) {
+                try {
+                    long offset = reader.position();
+                    String[] lines;
+                    while ((lines = reader.readRecord()) != null) {
+                        long start = offset;
+                        offset = reader.position();
+                        if (owned.contains(start)) {
+                            action.accept(parseRecord(lines));
+                            return true;
+                        }
+                    }
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Streams every investment still owned by the file through the given action in file order.
+     * Only one record is parsed at a time, and cached investments are reused instead of re-parsed.
+     *
+     * @param action The action to apply to each investment.
+     * @throws IOException If the file cannot be read.
+     */
+    public void forEach(Consumer<Investment> action) throws IOException {
+        try (Stream<Investment> investments = stream()) {
+            investments.forEach(action);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sums a value over every investment still owned by the file in a single streaming pass.
+     *
+     * @param function The value to compute for each investment.
+     * @return The sum of the values.
+     * @throws IOException If the file cannot be read.
+     */
+    public double sum(ToDoubleFunction<Investment> function) throws IOException {
+        double[] total = {0};
+        forEach(investment -> total[0] += function.applyAsDouble(investment));
+        return total[0];
+    }
+
+    /**
+     * Hands every investment still owned by the file over to the given action and empties the index.
+     *
+     * @param action The action receiving each investment.
+     * @throws IOException If the file cannot be read.
+     */
+    public void drain(Consumer<Investment> action) throws IOException {
+        forEach(action);
+        offsets.clear();
+        duplicateOffsets.clear();
+        cache.clear();
+    }
+
+    /**
+     * Rewrites the file with the records it still owns followed by the given in-memory investments.
+     * The records are copied one at a time into a temporary file that then replaces the original,
+     * and the offset index is rebuilt while writing.
+     *
+     * @param investments The investments owned by the portfolio.
+     * @throws IOException If the file cannot be written.
+     */
+    public void rewrite(Collection<Investment> investments) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        LinkedHashMap<String, Long> newOffsets = new LinkedHashMap<>();
+        HashSet<Long> newDuplicateOffsets = new HashSet<>();
+
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile, false))) {
+            long written = 0;
+            if (size() > 0) {
+                try (RecordReader reader = new RecordReader(new FileInputStream(file), 0)) {
+                    long offset = reader.position();
+                    String[] lines;
+                    while ((lines = reader.readRecord()) != null) {
+                        String key = value(lines[1]).toLowerCase();
+                        Long owned = offsets.get(key);
+                        long start = offset;
+                        offset = reader.position();
+                        if (owned != null && owned == start) {
+                            newOffsets.put(key, written);
+                            written += write(output, formatRecord(lines));
+                        } else if (duplicateOffsets.contains(start)) {
+                            newDuplicateOffsets.add(written);
+                            written += write(output, formatRecord(lines));
+                        }
+                    }
+                }
+            }
+            for (Investment investment : investments) {
+                written += write(output, formatRecord(investment));
+            }
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        offsets = newOffsets;
+        duplicateOffsets = newDuplicateOffsets;
+    }
+
+
+    //helper methods
+
+    /**
+     * Formats an investment in the key/value record layout used by the portfolio file.
+     *
+     * @param investment The investment to format.
+     * @return The record, including the blank separator line.
+     */
+    static String formatRecord(Investment investment) {
+        String separator = System.lineSeparator();
+        return "Type = " + (investment instanceof Stock ? "stock" : "mutualfund") + separator
+                + "Symbol = " + investment.getSymbol() + separator
+                + "Name = " + investment.getName() + separator
+                + "Quantity = " + investment.getQuantity() + separator
+                + "Price = " + String.format("%.2f", investment.getPrice()) + separator
+                + "BookValue = " + String.format("%.2f", investment.getBookValue()) + separator
+                + " " + separator;
+    }
+
+    /**
+     * Formats raw record lines back into the record layout, unchanged.
+     *
+     * @param lines The lines of the record.
+     * @return The record, including the blank separator line.
+     */
+    private static String formatRecord(String[] lines) {
+        StringBuilder record = new StringBuilder();
+        for (String line : lines) {
+            record.append(line).append(System.lineSeparator());
+        }
+        return record.append(' ').append(System.lineSeparator()).toString();
+    }
+
+    /**
+     * Parses the lines of one record into a stock or mutual fund.
+     *
+     * @param lines The lines of the record.
+     * @return The investment, or null if the type is unknown.
+     */
+    static Investment parseRecord(String[] lines) {
+        String type = value(lines[0]);
+        String symbol = value(lines[1]);
+        String name = value(lines[2]);
+        int quantity = Integer.parseInt(value(lines[3]));
+        double price = Double.parseDouble(value(lines[4]));
+        double bookValue = Double.parseDouble(value(lines[5]));
+
+        Investment investment = null;
+        if (type.equalsIgnoreCase("stock")) {
+            investment = new Stock(symbol, name, quantity, price, 0, 0, 0);
+        } else if (type.equalsIgnoreCase("mutualfund")) {
+            investment = new MutualFund(symbol, name, quantity, price, 0, 0, 0);
+        }
+        if (investment != null) {
+            investment.setBookValue(bookValue);
+        }
+        return investment;
+    }
+
+    /**
+     * Returns the trimmed value of a "Key = value" line.
+     *
+     * @param line The line to split.
+     * @return The value after the equals sign.
+     */
+    private static String value(String line) {
+        return line.split("=")[1].trim();
+    }
+
+    /**
+     * Writes a record to the output and returns the number of bytes written.
+     *
+     * @param output The stream to write to.
+     * @param record The record text.
+     * @return The number of bytes written.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static int write(OutputStream output, String record) throws IOException {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        output.write(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Buffered line reader that keeps track of its byte position in the file,
+     * so record offsets can be recorded during a sequential scan.
+     */
+    private static final class RecordReader implements Closeable {
+        private final InputStream input;
+        private long position;
+        private byte[] line = new byte[128];
+
+        /**
+         * Opens a reader positioned at the given byte offset.
+         *
+         * @param input The file stream.
+         * @param offset The byte offset to start reading from.
+         * @throws IOException If the stream cannot be positioned.
+         */
+        RecordReader(FileInputStream input, long offset) throws IOException {
+            input.getChannel().position(offset);
+            this.input = new BufferedInputStream(input);
+            this.position = offset;
+        }
+
+        long position() {
+            return position;
+        }
+
+        /**
+         * Reads the next record and skips the separator line after it, as readFile does.
+         *
+         * @return The record lines, or null at the end of the file.
+         * @throws IOException If the file ends in the middle of a record.
+         */
+        String[] readRecord() throws IOException {
+            // Tolerate extra blank lines between records
+            String first = readLine();
+            while (first != null && first.isBlank()) {
+                first = readLine();
+            }
+            if (first == null) {
+                return null;
+            }
+            String[] lines = new String[RECORD_LINES];
+            lines[0] = first;
+            for (int i = 1; i < RECORD_LINES; i++) {
+                lines[i] = readLine();
+                if (lines[i] == null) {
+                    throw new EOFException("Incomplete investment record at end of file");
+                }
+            }
+            readLine();
+            return lines;
+        }
+
+        /**
+         * Reads one line, accepting both \n and \r\n line endings.
+         *
+         * @return The line without its terminator, or null at the end of the file.
+         * @throws IOException If the stream cannot be read.
+         */
+        String readLine() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = input.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = (byte) b;
+            }
+            if (b == -1 && length == 0) {
+                return null;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -62,6 +62,16 @@ public class MutualFund extends Investment {
         return gain;
     }
 
+
+    /**
+     * Calculates the amount received by redeeming all units at the current price, after the redemption fee.
+     * 
+     * @return The value of the mutual fund at the current price.
+     */
+    @Override
+    public double calculateSaleValue() {
+        return super.calculateSaleValue() - REDEMPTION_FEE;
+    }
     
     /**
      * Calculates the book value for the mutual fund investment.
@@ -0,0 +1,106 @@
+package ePortfolio;
+
+/**
+ * The Order class represents a single buy or sell instruction in a batch of orders.
+ * Orders are plain values; they are checked and applied by Portfolio.executeBatch.
+ */
+
+public class Order {
+
+    /** The direction of an order. */
+    public enum Action { BUY, SELL }
+
+    private final Action action;
+    private final String type;
+    private final String symbol;
+    private final String name;
+    private final int quantity;
+    private final double price;
+
+    /**
+     * Constructor to initialize the order with its properties.
+     *
+     * @param action Whether the order buys or sells.
+     * @param type The investment type ("stock" or "mutualfund"), only needed when buying a new investment.
+     * @param symbol The symbol of the investment.
+     * @param name The name of the investment, only needed when buying a new investment.
+     * @param quantity The quantity to buy or sell.
+     * @param price The price per unit.
+     */
+    public Order(Action action, String type, String symbol, String name, int quantity, double price) {
+        this.action = action;
+        this.type = type;
+        this.symbol = symbol;
+        this.name = name;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    /**
+     * Creates a buy order.
+     *
+     * @param type The investment type ("stock" or "mutualfund").
+     * @param symbol The symbol of the investment.
+     * @param name The name of the investment.
+     * @param quantity The quantity to buy.
+     * @param price The price per unit.
+     * @return The order.
+     */
+    public static Order buy(String type, String symbol, String name, int quantity, double price) {
+        return new Order(Action.BUY, type, symbol, name, quantity, price);
+    }
+
+    /**
+     * Creates a sell order.
+     *
+     * @param symbol The symbol of the investment.
+     * @param quantity The quantity to sell.
+     * @param price The price per unit.
+     * @return The order.
+     */
+    public static Order sell(String symbol, int quantity, double price) {
+        return new Order(Action.SELL, "", symbol, "", quantity, price);
+    }
+
+    /**
+     * Parses an order from one line of an order file. The accepted formats are
+     * "buy &lt;stock|mutualfund&gt; &lt;symbol&gt; &lt;quantity&gt; &lt;price&gt; [name...]" and
+     * "sell &lt;symbol&gt; &lt;quantity&gt; &lt;price&gt;".
+     *
+     * @param line The line to parse.
+     * @return The order.
+     * @throws IllegalArgumentException If the line is not a valid order.
+     */
+    public static Order parse(String line) {
+        String[] token = line.trim().split("\\s+");
+        try {
+            if (token[0].equalsIgnoreCase("buy")) {
+                String name = token.length > 5 ? line.trim().split("\\s+", 6)[5] : token[2];
+                return buy(token[1].toLowerCase(), token[2], name, Integer.parseInt(token[3]), Double.parseDouble(token[4]));
+            } else if (token[0].equalsIgnoreCase("sell")) {
+                return sell(token[1], Integer.parseInt(token[2]), Double.parseDouble(token[3]));
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid order: " + line);
+        }
+        throw new IllegalArgumentException("Unknown order action: " + line);
+    }
+
+    // Getters
+    public Action getAction() { return action; }
+    public String getType() { return type; }
+    public String getSymbol() { return symbol; }
+    public String getName() { return name; }
+    public int getQuantity() { return quantity; }
+    public double getPrice() { return price; }
+
+    /**
+     * Provides a string representation of the order.
+     *
+     * @return A string representation of the order.
+     */
+    @Override
+    public String toString() {
+        return action + " " + quantity + " " + symbol + " @ $" + price;
+    }
+}
@@ -1,12 +1,19 @@
 package ePortfolio;
 
 import java.io.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Scanner;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The Portfolio class manages a collection of stocks and mutual funds.
@@ -22,6 +29,21 @@ public class Portfolio {
     /** Index of keywords for searching investments by name. */
     private HashMap<String, List<Integer>> keywordIndex;
 
+    /** Index of lowercased symbols to their positions in the investments list, in ascending order. */
+    private final HashMap<String, List<Integer>> symbolIndex;
+
+    /** Chooses how searches use the symbol and keyword indexes. */
+    private final QueryPlanner planner;
+
+    /** Lazily loaded portfolio file holding the investments not yet in memory, or null when loaded eagerly. */
+    private LazyPortfolioFile lazyFile;
+
+    /** Gains realized by sales, kept next to the portfolio file once one is loaded. */
+    private RealizedGainLedger ledger;
+
+    /** Applies corporate actions and keeps their audit lines until the next save, or null before the first action. */
+    private CorporateActionEngine actionEngine;
+
     /**
      * Constructs a new empty portfolio with no stocks or mutual funds.
      * Initializes the investments list and keyword index.
@@ -29,58 +51,58 @@ public class Portfolio {
     public Portfolio() {
         investments = new ArrayList<>();
 	    keywordIndex = new HashMap<>();
+        symbolIndex = new HashMap<>();
+        planner = new QueryPlanner(investments, symbolIndex, keywordIndex);
+        ledger = new RealizedGainLedger(null);
     } 
     
     /**
      * The main method that runs the portfolio management program.
      * It continuously asks the user for input and performs actions like buying, selling, and updating investments.
      *
-     * @param args Command-line arguments, where the first argument is the filename containing investment data.
+     * @param args Command-line arguments, where the first argument is the filename containing investment data
+     *             and an optional second argument "--lazy" loads investments on demand.
      */
     public static void main(String [] args){
 
-        if(args.length != 1){
+        if(args.length < 1 || args.length > 2){
             System.out.println("File name was not provided in command line");
             return;
         }
 
         String filename = args[0];
+        boolean lazy = args.length == 2 && args[1].equalsIgnoreCase("--lazy");
         //create new instance
         Portfolio portfolio = new Portfolio();
 
         // Load existing investments from file
-        portfolio.readFile(filename);
+        if (lazy) {
+            // Stop rather than continue with an empty portfolio that would overwrite the file on quit
+            if (!portfolio.openLazy(filename)) {
+                return;
+            }
+        } else {
+            portfolio.readFile(filename);
+        }
         Scanner scanner = new Scanner(System.in);
  
         //command loop
         while (true) {
-            System.out.println("Enter a command: buy, sell, update, getGain, search, quit");
+            System.out.println("Enter a command: buy, sell, batch, actions, update, getGain, realized, search, export, risk, rebalance, quit");
             String command = scanner.nextLine().trim().toLowerCase();
 
             switch (command) {
                 case "buy", "b" -> portfolio.buyInvestment(scanner, filename);
                 case "sell" -> portfolio.sellInvestment(scanner);
+                case "batch" -> portfolio.batchInvestments(scanner, filename);
+                case "actions" -> portfolio.applyCorporateActions(scanner, filename);
                 case "update", "u" -> portfolio.updateAllPrices(scanner);
                 case "getGain", "g" -> portfolio.totalGain();
-                case "search" -> {
-                    System.out.println("Enter investment symbol (leave blank if not searching by symbol):");
-                    String symbol = scanner.nextLine().trim();
-                
-                    System.out.println("Enter keywords for the name (space-separated, leave blank if not searching by name):");
-                    String keywordInput = scanner.nextLine().trim();
-                    String[] keywords = keywordInput.isEmpty() ? new String[0] : keywordInput.split("\\s+");
-                
-                    System.out.println("Enter lower bound price (or leave blank for no lower bound):");
-                    String lowerBoundInput = scanner.nextLine().trim();
-                    double lowerBound = lowerBoundInput.isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(lowerBoundInput);
-                
-                    System.out.println("Enter upper bound price (or leave blank for no upper bound):");
-                    String upperBoundInput = scanner.nextLine().trim();
-                    double upperBound = upperBoundInput.isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(upperBoundInput);
-                
-                    // Now call the search method with these parameters
-                    portfolio.searchInvestments(symbol, keywords, lowerBound, upperBound);
-                }                
+                case "realized" -> portfolio.realizedGain(scanner);
+                case "search" -> portfolio.searchInvestments(readQuery(scanner));
+                case "export" -> portfolio.exportReport(scanner);
+                case "risk" -> portfolio.simulateRisk(scanner);
+                case "rebalance" -> portfolio.rebalance(scanner, filename);
                 case "quit", "q" -> {
                     System.out.println("Exiting program.");
                     // Save all investments to the specified file before exiting
@@ -95,6 +117,32 @@ public class Portfolio {
     }
 
 
+    /**
+     * Asks the user for search criteria.
+     *
+     * @param scanner The scanner for user input.
+     * @return The query built from the answers.
+     */
+    private static InvestmentQuery readQuery(Scanner scanner) {
+        System.out.println("Enter investment symbol (leave blank if not searching by symbol):");
+        String symbol = scanner.nextLine().trim();
+    
+        System.out.println("Enter keywords for the name (space-separated, leave blank if not searching by name):");
+        String keywordInput = scanner.nextLine().trim();
+        String[] keywords = keywordInput.isEmpty() ? new String[0] : keywordInput.split("\\s+");
+    
+        System.out.println("Enter lower bound price (or leave blank for no lower bound):");
+        String lowerBoundInput = scanner.nextLine().trim();
+        double lowerBound = lowerBoundInput.isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(lowerBoundInput);
+    
+        System.out.println("Enter upper bound price (or leave blank for no upper bound):");
+        String upperBoundInput = scanner.nextLine().trim();
+        double upperBound = upperBoundInput.isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(upperBoundInput);
+
+        return new InvestmentQuery(symbol, keywords, lowerBound, upperBound);
+    }
+
+
     //methods to load and save from/to a file 
 
     /**
@@ -103,6 +151,21 @@ public class Portfolio {
      * @param filename The name of the file to save the investments.
      */
     public void saveToFile(String fileName){
+        ledger.flush();
+
+        // In lazy mode the untouched records are streamed from the file instead of held in memory
+        if (lazyFile != null) {
+            try {
+                lazyFile.rewrite(investments);
+            } catch (IOException e) {
+                System.out.println("Error writing to file" + fileName);
+                return;
+            }
+            System.out.println("\nInvestments were successfully saved to " + fileName);
+            writeActionAudit();
+            return;
+        }
+
         PrintWriter outputStream = null;
         try{
             //connect stream to file
@@ -114,18 +177,31 @@ public class Portfolio {
 
         //iterate through all investments
         for(Investment investment: investments){
-            outputStream.println("Type = " + (investment instanceof Stock ? "stock" : "mutualfund"));
-            outputStream.println("Symbol = " + investment.getSymbol());
-            outputStream.println("Name = " + investment.getName());
-            outputStream.println("Quantity = " + investment.getQuantity());
-            outputStream.println("Price = " + String.format("%.2f", investment.getPrice()));
-            outputStream.println("BookValue = " + String.format("%.2f", investment.getBookValue()));
-            outputStream.println(" ");
+            outputStream.print(LazyPortfolioFile.formatRecord(investment));
         }
 
         //close the stream and display success
         outputStream.close();
+        if (outputStream.checkError()) {
+            System.out.println("Error writing to file" + fileName);
+            return;
+        }
         System.out.println("\nInvestments were successfully saved to " + fileName);
+        writeActionAudit();
+    }
+
+    /**
+     * Records the corporate actions applied since the last save in their audit log, now that the file has them.
+     */
+    private void writeActionAudit() {
+        if (actionEngine == null) {
+            return;
+        }
+        try {
+            actionEngine.writeAudit();
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage() + ". The applied actions will be recorded at the next save.");
+        }
     }
 
     /**
@@ -134,6 +210,7 @@ public class Portfolio {
      * @param filename The name of the file to read investments from.
      */
     public void readFile(String fileName) {
+    ledger = new RealizedGainLedger(fileName + ".ledger");
     Scanner inputStream = null;
     File file = new File(fileName);
 
@@ -183,11 +260,13 @@ public class Portfolio {
                 investment = new Stock(symbol, name, quantity, price, 0, 0, 0);
                 System.out.println("Stock added to investment.");
                 investments.add(investment);
+                addToSymbolIndex(symbol, investments.size() - 1);
                 investment.setBookValue(bookValue);
             } else if (type.equalsIgnoreCase("mutualfund")) {
                 System.out.println("MutualFund added to investment");
                 investment = new MutualFund(symbol, name, quantity, price, 0, 0, 0);
                 investments.add(investment);
+                addToSymbolIndex(symbol, investments.size() - 1);
                 investment.setBookValue(bookValue);
             }
 
@@ -234,6 +313,46 @@ public class Portfolio {
         }
     }
 
+    /**
+     * Opens the investment file in lazy mode. Only an index of record offsets is built up front;
+     * investments are read from the file the first time they are accessed.
+     * A missing file is handled the same way as readFile does.
+     *
+     * @param fileName The name of the file to read investments from.
+     * @return True if the file was opened, false if it could not be read; the portfolio must then not be saved.
+     */
+    public boolean openLazy(String fileName) {
+        if (!new File(fileName).exists()) {
+            readFile(fileName);
+            return true;
+        }
+
+        ledger = new RealizedGainLedger(fileName + ".ledger");
+        try {
+            lazyFile = LazyPortfolioFile.open(fileName, LazyPortfolioFile.DEFAULT_CACHE_SIZE);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error: Could not load file " + fileName);
+            return false;
+        }
+        System.out.println("Indexed " + lazyFile.size() + " investments from " + fileName + " (lazy mode).");
+        return true;
+    }
+
+    /**
+     * Moves every investment still held by the lazy file into memory and the keyword index.
+     * Used by operations that need to modify the whole portfolio. Does nothing in eager mode.
+     */
+    void materializeAll() {
+        if (lazyFile == null) {
+            return;
+        }
+        try {
+            lazyFile.drain(this::addInvestment);
+        } catch (IOException e) {
+            System.out.println("Error: Could not load investments from file.");
+        }
+    }
+
 
     //methods to implement tasks
 
@@ -259,11 +378,7 @@ public class Portfolio {
             System.out.println("Enter a price:");
             double price = Double.parseDouble(scanner.nextLine());
         
-            investment.buy(quantity, price);
-            
-            // Update payment and bookValueSold after buying
-            investment.setPayment(investment.calculatePayment(quantity, price));
-            investment.setBookValueSold(investment.calculateBookValue(quantity, price));
+            buyMore(investment, quantity, price);
     
             System.out.println("Investment updated successfully.");
             saveToFile(fileName);
@@ -276,25 +391,8 @@ public class Portfolio {
             System.out.println("Enter price:");
             double price = Double.parseDouble(scanner.nextLine());
             
-            Investment newInvestment = null; // Initialize newInvestment
-            
-            if (type.equals("stock")) {
-                // Calculate payment and bookValue for stock by creating an instance
-                Stock tempStock = new Stock(symbol, name, quantity, price, 0, 0, 0); // Temporary Stock instance
-                double bookValue = tempStock.calculateBookValue(quantity, price);  // Consistent book value calculation
-                double payment = tempStock.calculatePayment(quantity, price);  // Initial payment            
-                
-                newInvestment = new Stock(symbol, name, quantity, price, bookValue, payment, 0);
-
-            } else if (type.equals("mutualfund")) {
-                // Calculate payment and bookValue for mutual fund by creating an instance
-                MutualFund tempMutualFund = new MutualFund(symbol, name, quantity, price, 0, 0, 0); // Temporary MutualFund instance
-                double bookValue = quantity * price; // No additional costs for mutual funds
-                double payment = tempMutualFund.calculatePayment(quantity, price);
-                double bookValueSold = tempMutualFund.calculateBookValue(quantity, price);
-                
-                newInvestment = new MutualFund(symbol, name, quantity, price, bookValue, payment, bookValueSold);
-            } else {
+            Investment newInvestment = createInvestment(type, symbol, name, quantity, price);
+            if (newInvestment == null) {
                 System.out.println("Invalid investment type.");
                 return;
             }
@@ -305,6 +403,52 @@ public class Portfolio {
         }
     }
     
+    /**
+     * Creates a new stock or mutual fund with its initial book value and payment.
+     * 
+     * @param type The investment type, either "stock" or "mutualfund".
+     * @param symbol The symbol of the investment.
+     * @param name The name of the investment.
+     * @param quantity The quantity bought.
+     * @param price The price paid per unit.
+     * @return The new investment, or null if the type is invalid.
+     */
+    static Investment createInvestment(String type, String symbol, String name, int quantity, double price) {
+        if (type.equals("stock")) {
+            // Calculate payment and bookValue for stock by creating an instance
+            Stock tempStock = new Stock(symbol, name, quantity, price, 0, 0, 0); // Temporary Stock instance
+            double bookValue = tempStock.calculateBookValue(quantity, price);  // Consistent book value calculation
+            double payment = tempStock.calculatePayment(quantity, price);  // Initial payment
+
+            return new Stock(symbol, name, quantity, price, bookValue, payment, 0);
+
+        } else if (type.equals("mutualfund")) {
+            // Calculate payment and bookValue for mutual fund by creating an instance
+            MutualFund tempMutualFund = new MutualFund(symbol, name, quantity, price, 0, 0, 0); // Temporary MutualFund instance
+            double bookValue = quantity * price; // No additional costs for mutual funds
+            double payment = tempMutualFund.calculatePayment(quantity, price);
+            double bookValueSold = tempMutualFund.calculateBookValue(quantity, price);
+
+            return new MutualFund(symbol, name, quantity, price, bookValue, payment, bookValueSold);
+        }
+        return null;
+    }
+
+    /**
+     * Buys more units of an investment already in the portfolio.
+     * 
+     * @param investment The investment to add units to.
+     * @param quantity The quantity bought.
+     * @param price The price paid per unit.
+     */
+    void buyMore(Investment investment, int quantity, double price) {
+        investment.buy(quantity, price);
+
+        // Update payment and bookValueSold after buying
+        investment.setPayment(investment.calculatePayment(quantity, price));
+        investment.setBookValueSold(investment.calculateBookValue(quantity, price));
+    }
+    
     /**
      * Sells an investment and updates the portfolio accordingly.
      * 
@@ -322,16 +466,13 @@ public class Portfolio {
             double price = Double.parseDouble(scanner.nextLine());
     
             if (quantity <= investment.getQuantity()) {
-                investment.sell(quantity, price);
+                double gainFromSale = investment.sell(quantity, price);
+                recordSale(investment.getSymbol(), quantity, price, gainFromSale);
                 System.out.println("Investment sold successfully.");
-    
-                removeFromIndex(investment.getName(), investments.indexOf(investment));
-
 
-                // Remove investment if fully sold
+                // Remove investment if fully sold; partial sales keep the name indexed
                 if (investment.getQuantity() == 0) {
-
-		    deleteInvestment(investments.indexOf(investment));
+                    removeInvestment(investment);
 
                     System.out.println("Investment fully sold and removed from portfolio.");
                 }
@@ -343,12 +484,239 @@ public class Portfolio {
         }
     }
     
+    /**
+     * Reads a file of orders, one per line, and executes them as a single batch.
+     * 
+     * @param scanner The scanner for user input.
+     * @param fileName The name of the portfolio file to save after the batch.
+     */
+    public void batchInvestments(Scanner scanner, String fileName) {
+        List<Order> orders = new ArrayList<>();
+        if (!readLineFile(scanner, "order", line -> orders.add(Order.parse(line)))) {
+            return;
+        }
+
+        if (executeBatch(orders, fileName)) {
+            System.out.println("Batch of " + orders.size() + " orders executed successfully.");
+        }
+    }
+
+    /**
+     * Executes a list of buy and sell orders all-or-nothing.
+     * Every order is validated before any is applied: sells need enough units (counting earlier
+     * orders in the batch), buys of new symbols need a known type, and quantities and prices must be valid.
+     * If any order is invalid, the errors are printed and the portfolio is left unchanged.
+     * Otherwise the orders are applied in sequence, the keyword index is updated once for the
+     * whole batch, and the portfolio is saved once at the end.
+     * 
+     * @param orders The orders to execute, in order.
+     * @param fileName The name of the file to save after the batch, or null to skip saving.
+     * @return True if the batch was applied, false if it was rejected.
+     */
+    public boolean executeBatch(List<Order> orders, String fileName) {
+        // Look up every symbol in the batch; records still on disk are only read, not taken
+        List<String> errors = new ArrayList<>();
+        Map<String, Investment> held = new HashMap<>();
+        Map<String, String> onDisk = new LinkedHashMap<>();
+        for (Order order : orders) {
+            String key = order.getSymbol().toLowerCase();
+            if (held.containsKey(key)) {
+                continue;
+            }
+            List<Integer> positions = symbolIndex.get(key);
+            if (positions != null) {
+                held.put(key, investments.get(positions.get(0)));
+            } else if (lazyFile != null && lazyFile.contains(key)) {
+                try {
+                    held.put(key, lazyFile.fetch(key));
+                    onDisk.put(key, order.getSymbol());
+                } catch (IOException e) {
+                    errors.add("Order (" + order + "): could not read investment " + order.getSymbol() + " from file.");
+                }
+            }
+        }
+
+        // Validate against the projected quantity of every symbol
+        Map<String, Integer> projected = new HashMap<>();
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            String key = order.getSymbol().toLowerCase();
+            Investment investment = held.get(key);
+            Integer quantity = projected.get(key);
+            if (quantity == null) {
+                quantity = investment == null ? -1 : investment.getQuantity();  // -1 marks an unknown symbol
+            }
+
+            if (order.getQuantity() <= 0 || !(order.getPrice() >= 0)) {
+                errors.add("Order " + (i + 1) + " (" + order + "): quantity must be positive and price cannot be negative.");
+            } else if (order.getAction() == Order.Action.BUY) {
+                if (quantity < 0 && !order.getType().equals("stock") && !order.getType().equals("mutualfund")) {
+                    errors.add("Order " + (i + 1) + " (" + order + "): invalid investment type " + order.getType() + ".");
+                } else {
+                    projected.put(key, Math.max(quantity, 0) + order.getQuantity());
+                }
+            } else if (quantity < 0) {
+                errors.add("Order " + (i + 1) + " (" + order + "): investment with the given symbol not found.");
+            } else if (order.getQuantity() > quantity) {
+                errors.add("Order " + (i + 1) + " (" + order + "): insufficient quantity to sell.");
+            } else {
+                projected.put(key, quantity - order.getQuantity());
+            }
+        }
+        if (!errors.isEmpty()) {
+            System.out.println("Batch rejected, the portfolio was not changed:");
+            for (String error : errors) {
+                System.out.println(error);
+            }
+            return false;
+        }
+
+        // Move the investments read from disk into memory before any of them is changed
+        for (Map.Entry<String, String> entry : onDisk.entrySet()) {
+            Investment investment = findInvestment(entry.getValue());
+            if (investment == null) {
+                System.out.println("Batch rejected, the portfolio was not changed.");
+                return false;
+            }
+            held.put(entry.getKey(), investment);
+        }
+
+        // Apply the orders; new investments are kept aside until the index is updated
+        Map<String, Investment> added = new LinkedHashMap<>();
+        double gainFromSales = 0;
+        List<Order> sales = new ArrayList<>();
+        double[] gains = new double[orders.size()];
+        for (Order order : orders) {
+            String key = order.getSymbol().toLowerCase();
+            Investment investment = held.get(key);
+            if (order.getAction() == Order.Action.BUY) {
+                if (investment == null) {
+                    investment = createInvestment(order.getType(), order.getSymbol(), order.getName(), order.getQuantity(), order.getPrice());
+                    held.put(key, investment);
+                    added.put(key, investment);
+                } else {
+                    if (investment.getQuantity() == 0) {
+                        // Bought back after being fully sold earlier in the batch; drop any rounding leftover
+                        investment.setBookValue(0);
+                    }
+                    buyMore(investment, order.getQuantity(), order.getPrice());
+                }
+            } else {
+                gains[sales.size()] = investment.applySale(order.getQuantity(), order.getPrice());
+                gainFromSales += gains[sales.size()];
+                sales.add(order);
+            }
+        }
+        ledger.record(LocalDate.now(), sales, gains);
+
+        applyBatchToIndex(added.values());
+        System.out.printf("Gain from sales in batch: $%.2f%n", gainFromSales);
+
+        if (fileName != null) {
+            saveToFile(fileName);
+        }
+        return true;
+    }
+
+    /**
+     * Updates the investments list and indexes after a batch in a single pass.
+     * Fully sold investments are dropped, the remaining positions are renumbered, and new
+     * investments are appended, so each keyword's position list is rewritten at most once.
+     * The symbol index is only rebuilt when investments were dropped.
+     * 
+     * @param added The investments created by the batch.
+     */
+    private void applyBatchToIndex(Iterable<Investment> added) {
+        // Map old positions to new ones, dropping fully sold investments
+        int[] newPosition = new int[investments.size()];
+        ArrayList<Investment> kept = new ArrayList<>(investments.size());
+        for (int i = 0; i < investments.size(); i++) {
+            Investment investment = investments.get(i);
+            if (investment.getQuantity() == 0) {
+                newPosition[i] = -1;
+            } else {
+                newPosition[i] = kept.size();
+                kept.add(investment);
+            }
+        }
+
+        if (kept.size() < investments.size()) {
+            Iterator<Map.Entry<String, List<Integer>>> entries = keywordIndex.entrySet().iterator();
+            while (entries.hasNext()) {
+                List<Integer> positions = entries.next().getValue();
+                List<Integer> renumbered = new ArrayList<>(positions.size());
+                for (int position : positions) {
+                    if (newPosition[position] >= 0) {
+                        renumbered.add(newPosition[position]);
+                    }
+                }
+                if (renumbered.isEmpty()) {
+                    entries.remove();
+                } else {
+                    positions.clear();
+                    positions.addAll(renumbered);
+                }
+            }
+            investments.clear();
+            investments.addAll(kept);
+
+            symbolIndex.clear();
+            for (int i = 0; i < investments.size(); i++) {
+                addToSymbolIndex(investments.get(i).getSymbol(), i);
+            }
+        }
+
+        // Group the keywords of new investments so each keyword is touched once
+        Map<String, List<Integer>> additions = new HashMap<>();
+        for (Investment investment : added) {
+            if (investment.getQuantity() == 0) {
+                continue;  // Bought and fully sold within the batch
+            }
+            investments.add(investment);
+            addToSymbolIndex(investment.getSymbol(), investments.size() - 1);
+            for (String keyword : investment.getName().toLowerCase().split("\\s+")) {
+                additions.computeIfAbsent(keyword, k -> new ArrayList<>()).add(investments.size() - 1);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : additions.entrySet()) {
+            keywordIndex.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a file of corporate actions (splits, consolidations and distributions), one per line,
+     * applies those already effective, and saves the portfolio. Applied actions are appended
+     * to an audit log next to the portfolio file once the save succeeds.
+     * 
+     * @param scanner The scanner for user input.
+     * @param fileName The name of the portfolio file to save after applying the actions.
+     */
+    public void applyCorporateActions(Scanner scanner, String fileName) {
+        List<CorporateAction> actions = new ArrayList<>();
+        if (!readLineFile(scanner, "corporate action", line -> actions.add(CorporateAction.parse(line)))) {
+            return;
+        }
+
+        if (actionEngine == null) {
+            actionEngine = new CorporateActionEngine(this, fileName + ".actions.log");
+        }
+        try {
+            // The audit log is written by saveToFile, once the file holds the applied actions
+            actionEngine.apply(actions, LocalDate.now());
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage() + ". No corporate actions were applied.");
+            return;
+        }
+        saveToFile(fileName);
+    }
+
     /**
      * Updates the prices of all investments in the portfolio.
      * 
      * @param scanner The scanner for user input.
      */
     public void updateAllPrices(Scanner scanner) {
+        materializeAll();
         for (Investment investment : investments) {
             System.out.println("Enter new price for " + investment.getSymbol() + ": ");
             double newPrice = scanner.nextDouble();
@@ -370,11 +738,213 @@ public class Portfolio {
             double gain = investment.calculateGain(price); // Calls the calculateGain() method for each investment
             totalGain += gain; // Add individual gain to total gain
         }
+
+        // Stream the investments that are still on disk in lazy mode
+        if (lazyFile != null) {
+            try {
+                totalGain += lazyFile.sum(investment -> investment.calculateGain(investment.getPrice()));
+            } catch (IOException e) {
+                System.out.println("Error: Could not read investments from file.");
+            }
+        }
         
         //Print total gain
         System.out.printf("Total gain for all investments: $%.2f%n", totalGain);
     }
-    
+
+    /**
+     * Prints the gain realized by sales between two dates, for one symbol or the whole portfolio.
+     * Leaving the dates blank gives the year-to-date realized gain.
+     *
+     * @param scanner The scanner for user input.
+     */
+    public void realizedGain(Scanner scanner) {
+        System.out.println("Enter investment symbol (leave blank for the whole portfolio):");
+        String symbol = scanner.nextLine().trim();
+
+        LocalDate today = LocalDate.now();
+        LocalDate from;
+        LocalDate to;
+        try {
+            System.out.println("Enter start date as yyyy-mm-dd (leave blank for the start of the year):");
+            String fromInput = scanner.nextLine().trim();
+            from = fromInput.isEmpty() ? today.withDayOfYear(1) : LocalDate.parse(fromInput);
+
+            System.out.println("Enter end date as yyyy-mm-dd (leave blank for today):");
+            String toInput = scanner.nextLine().trim();
+            to = toInput.isEmpty() ? today : LocalDate.parse(toInput);
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date. Please try again.");
+            return;
+        }
+
+        double gain = ledger.realizedGain(symbol, from, to);
+        int sales = ledger.sales(symbol, from, to);
+        System.out.printf("Realized gain for %s from %s to %s: $%.2f (%d sales)%n",
+                symbol.isEmpty() ? "all investments" : symbol, from, to, gain, sales);
+    }
+
+    /**
+     * Records the gain realized by a sale in the ledger, dated today.
+     *
+     * @param symbol The symbol sold.
+     * @param quantity The quantity sold.
+     * @param price The price per unit.
+     * @param gain The gain realized by the sale.
+     */
+    void recordSale(String symbol, int quantity, double price, double gain) {
+        ledger.record(LocalDate.now(), symbol, quantity, price, gain);
+    }
+
+
+    /**
+     * Exports holdings, gains or search results as CSV or JSON lines to a file or standard output.
+     * A snapshot is taken right away; exports to a file then run in the background, so other commands
+     * can continue while the file is written.
+     * 
+     * @param scanner The scanner for user input.
+     */
+    public void exportReport(Scanner scanner) {
+        System.out.println("Enter report to export (holdings, gains or search):");
+        String reportInput = scanner.nextLine().trim().toLowerCase();
+        if (!reportInput.equals("holdings") && !reportInput.equals("gains") && !reportInput.equals("search")) {
+            System.out.println("Invalid report. Please try again.");
+            return;
+        }
+        InvestmentQuery query = reportInput.equals("search") ? readQuery(scanner) : null;
+
+        System.out.println("Enter format (csv or json):");
+        String formatInput = scanner.nextLine().trim().toLowerCase();
+        if (!formatInput.equals("csv") && !formatInput.equals("json")) {
+            System.out.println("Invalid format. Please try again.");
+            return;
+        }
+
+        System.out.println("Enter destination file name (or - for standard output):");
+        String destination = scanner.nextLine().trim();
+
+        ReportExporter.Report report = reportInput.equals("gains") ? ReportExporter.Report.GAINS : ReportExporter.Report.HOLDINGS;
+        ReportExporter.Format format = formatInput.equals("csv") ? ReportExporter.Format.CSV : ReportExporter.Format.JSON;
+
+        ReportExporter exporter;
+        try {
+            if (query != null) {
+                // Search results are usually a small subset, so the matches themselves form the snapshot
+                List<Investment> matches;
+                try (Stream<Investment> results = query(query)) {
+                    matches = results.collect(Collectors.toList());
+                }
+                exporter = new ReportExporter(matches, null, report, format, destination);
+            } else {
+                // Investments still owned by the file are read from it as it is now
+                Stream<Investment> fileRecords = lazyFile == null ? null : lazyFile.detachedStream();
+                exporter = new ReportExporter(investments, fileRecords, report, format, destination);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error: Could not read investments from file.");
+            return;
+        }
+
+        if (destination.equals("-")) {
+            exporter.run();
+        } else {
+            new Thread(exporter, "report-export").start();
+            System.out.println("Exporting to " + destination + " in the background.");
+        }
+    }
+
+    /**
+     * Runs a Monte Carlo simulation of the portfolio's gains over a horizon and displays the
+     * value at risk, conditional value at risk and gain percentiles for the whole portfolio,
+     * its stocks and its mutual funds.
+     * 
+     * @param scanner The scanner for user input.
+     */
+    public void simulateRisk(Scanner scanner) {
+        System.out.println("Enter number of scenarios (leave blank for 100000):");
+        String scenarioInput = scanner.nextLine().trim();
+        int scenarios = scenarioInput.isEmpty() ? 100000 : Integer.parseInt(scenarioInput);
+
+        System.out.println("Enter horizon in trading days (leave blank for 10):");
+        String horizonInput = scanner.nextLine().trim();
+        int horizonDays = horizonInput.isEmpty() ? 10 : Integer.parseInt(horizonInput);
+
+        System.out.println("Enter random seed (leave blank for 42):");
+        String seedInput = scanner.nextLine().trim();
+        long seed = seedInput.isEmpty() ? 42 : Long.parseLong(seedInput);
+
+        if (scenarios <= 0 || horizonDays <= 0) {
+            System.out.println("Scenarios and horizon must be positive.");
+            return;
+        }
+
+        Positions positions = copyPositions();
+        if (positions == null) {
+            return;
+        }
+        double[] values = new double[positions.prices.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = positions.quantities[i] * positions.prices[i];
+        }
+
+        long start = System.nanoTime();
+        RiskSimulator.Result result = new RiskSimulator(values, positions.isStock).simulate(scenarios, horizonDays, seed);
+        System.out.printf("Simulated %d scenarios over %d days in %.2f s%n", scenarios, horizonDays, (System.nanoTime() - start) / 1e9);
+
+        printRisk("All investments", result.getTotal());
+        printRisk("Stocks", result.getStocks());
+        printRisk("Mutual funds", result.getMutualFunds());
+    }
+
+    /**
+     * Reads target weights and prices from a file, prints the trades that reach the targets,
+     * and optionally executes them as one batch.
+     * 
+     * @param scanner The scanner for user input.
+     * @param fileName The name of the portfolio file to save after the trades.
+     */
+    public void rebalance(Scanner scanner, String fileName) {
+        Rebalancer rebalancer = new Rebalancer();
+        if (!readLineFile(scanner, "target", rebalancer::addTarget)) {
+            return;
+        }
+
+        Positions positions = copyPositions();
+        if (positions == null) {
+            return;
+        }
+        int size = positions.symbols.length;
+
+        Rebalancer.Plan plan;
+        long start = System.nanoTime();
+        try {
+            plan = rebalancer.plan(positions.symbols, positions.isStock, positions.quantities, positions.prices);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Planned %d trades for %d investments in %.3f s%n", plan.getOrders().size(), size, (System.nanoTime() - start) / 1e9);
+
+        for (String symbol : plan.getUnmatched()) {
+            System.out.println("Skipped target, investment not held: " + symbol);
+        }
+        List<Order> orders = plan.getOrders();
+        for (int i = 0; i < Math.min(orders.size(), 20); i++) {
+            System.out.println(orders.get(i));
+        }
+        if (orders.size() > 20) {
+            System.out.println("... and " + (orders.size() - 20) + " more trades");
+        }
+        System.out.printf("Portfolio value: $%.2f, traded: $%.2f, commission: $%.2f%n", plan.getTotalValue(), plan.getTurnover(), plan.getCommission());
+
+        if (orders.isEmpty()) {
+            return;
+        }
+        System.out.println("Execute these trades as one batch? (yes/no)");
+        if (scanner.nextLine().trim().equalsIgnoreCase("yes") && executeBatch(orders, fileName)) {
+            System.out.println("Batch of " + orders.size() + " orders executed successfully.");
+        }
+    }
 
     /**
      * Searches for investments in the portfolio based on symbol, name keywords, and price range.
@@ -385,24 +955,31 @@ public class Portfolio {
      * @param upperBound The upper bound of the price range (use Double.POSITIVE_INFINITY for no upper bound).
      */
     public void searchInvestments(String symbol, String[] keywords, double lowerBound, double upperBound) {
-        List<Integer> positionsToCheck = null;
-        for (String keyword : keywords) {
-            List<Integer> keywordPositions = keywordIndex.getOrDefault(keyword.toLowerCase(), Collections.emptyList());
-            if (positionsToCheck == null) {
-                positionsToCheck = new ArrayList<>(keywordPositions);
-            } else {
-                positionsToCheck.retainAll(keywordPositions); // Keep only intersecting positions
-            }
-        }       
-    
-        // Check the reduced list of positions
+        searchInvestments(new InvestmentQuery(symbol, keywords, lowerBound, upperBound));
+    }
+
+    /**
+     * Searches for investments matching a query and displays them with the chosen query plan.
+     * 
+     * @param query The search criteria.
+     */
+    public void searchInvestments(InvestmentQuery query) {
+        QueryPlanner.Plan plan = planner.plan(query);
+        String description = plan.toString();
+        if (lazyFile != null && (plan.path != QueryPlanner.AccessPath.SYMBOL || lazyFile.hasDuplicates())) {
+            description += ", then up to " + lazyFile.size() + " investments in the file";
+        }
+        System.out.println("Query plan: " + description);
+
         boolean found = false;
-        for (int pos : positionsToCheck) {
-            Investment investment = investments.get(pos);
-            if (matchesSymbolAndPriceRange(investment, symbol, lowerBound, upperBound)) {
-                System.out.println("Found investment at position " + pos + ": " + investment);
+        try (Stream<Investment> results = query(plan, query)) {
+            Iterator<Investment> matches = results.iterator();
+            while (matches.hasNext()) {
+                System.out.println("Found investment: " + matches.next());
                 found = true;
             }
+        } catch (UncheckedIOException e) {
+            System.out.println("Error: Could not read investments from file.");
         }
 
         // If no investment found, notify the user
@@ -417,6 +994,46 @@ public class Portfolio {
         }
     }
 
+    /**
+     * Runs a query against the portfolio and returns the matching investments as a lazily evaluated stream.
+     * The planner reads from the most selective index (exact symbol, then the shortest keyword
+     * posting list, then a full scan) and checks the remaining criteria on each candidate.
+     * In lazy mode, investments still on disk are streamed from the file after the in-memory ones.
+     * The stream should be closed after use and consumed before the portfolio is changed.
+     * 
+     * @param query The search criteria.
+     * @return The matching investments.
+     */
+    public Stream<Investment> query(InvestmentQuery query) {
+        return query(planner.plan(query), query);
+    }
+
+    /**
+     * Runs a query with a plan that was already made for it.
+     * 
+     * @param plan The plan from the query planner.
+     * @param query The search criteria.
+     * @return The matching investments.
+     */
+    private Stream<Investment> query(QueryPlanner.Plan plan, InvestmentQuery query) {
+        Stream<Investment> results = planner.execute(plan, query);
+
+        // A symbol found in memory is not also on disk, unless the file repeats symbols
+        if (lazyFile == null || (plan.path == QueryPlanner.AccessPath.SYMBOL && !lazyFile.hasDuplicates())) {
+            return results;
+        }
+        return Stream.concat(results, Stream.of(query).flatMap(this::queryFile));
+    }
+
+    /**
+     * Returns a read-only view of the investments held in memory.
+     * 
+     * @return The in-memory investments, in portfolio order.
+     */
+    List<Investment> getInvestments() {
+        return Collections.unmodifiableList(investments);
+    }
+
     /**
      * Adds an investment to the keyword index based on the investment's name.
      * The name is split into keywords (lowercased) and each keyword is indexed with the position of the investment.
@@ -431,6 +1048,17 @@ public class Portfolio {
         }
     }
 
+    /**
+     * Adds a position to the symbol index. Positions are added in ascending order, so the first
+     * investment with a symbol is the one found by findInvestment, as when the file was read.
+     * 
+     * @param symbol The symbol of the investment.
+     * @param position The position of the investment in the investments list.
+     */
+    private void addToSymbolIndex(String symbol, int position) {
+        symbolIndex.computeIfAbsent(symbol.toLowerCase(), k -> new ArrayList<>()).add(position);
+    }
+
     /**
      * Adds a new investment to the portfolio and updates the keyword index.
      * The investment is added to the investments list, and its name is indexed.
@@ -439,6 +1067,7 @@ public class Portfolio {
      */
 	public void addInvestment(Investment investment) {
         investments.add(investment);
+        addToSymbolIndex(investment.getSymbol(), investments.size() - 1);
         addToIndex(investment.getName(), investments.size() - 1);
     }
 
@@ -460,6 +1089,29 @@ public class Portfolio {
                 }
             }
         }
+        // Later lots of the same symbol move up, so the next one is found by symbol
+        String key = investment.getSymbol().toLowerCase();
+        List<Integer> lots = symbolIndex.get(key);
+        lots.remove((Integer) position);
+        if (lots.isEmpty()) {
+            symbolIndex.remove(key);
+        }
+        for (List<Integer> positions : symbolIndex.values()) {
+            for (int i = 0; i < positions.size(); i++) {
+                if (positions.get(i) > position) {
+                    positions.set(i, positions.get(i) - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the given investment from the portfolio and the keyword index.
+     * 
+     * @param investment The investment to remove.
+     */
+    public void removeInvestment(Investment investment) {
+        deleteInvestment(investments.indexOf(investment));
     }
 
     /**
@@ -485,31 +1137,140 @@ public class Portfolio {
     //helper methods
 
     /**
-     * Helper method to check if an investment matches the specified symbol and falls within the given price range.
+     * Asks for the name of a file and passes each non-blank line of it, trimmed, to a handler.
+     * Prints an error if the file cannot be read or the handler rejects a line.
      * 
-     * @param investment The investment to check.
-     * @param symbol The symbol of the investment (can be empty to ignore symbol matching).
-     * @param lowerBound The lower price bound (inclusive). Use Double.NEGATIVE_INFINITY for no lower bound.
-     * @param upperBound The upper price bound (inclusive). Use Double.POSITIVE_INFINITY for no upper bound.
-     * @return True if the investment matches the symbol and falls within the price range, otherwise false.
+     * @param scanner The scanner for user input.
+     * @param kind The kind of file, used in the prompt (e.g. "order").
+     * @param handler Parses one line, throwing IllegalArgumentException if it is invalid.
+     * @return True if every line was handled, false after an error.
      */
-    private boolean matchesSymbolAndPriceRange(Investment investment, String symbol, double lowerBound, double upperBound) {
-        return (symbol.isEmpty() || investment.getSymbol().equalsIgnoreCase(symbol)) &&
-        investment.getPrice() >= lowerBound &&
-        investment.getPrice() <= upperBound;
+    private static boolean readLineFile(Scanner scanner, String kind, Consumer<String> handler) {
+        System.out.println("Enter the name of the " + kind + " file:");
+        String lineFile = scanner.nextLine().trim();
+
+        try (Scanner inputStream = new Scanner(new FileInputStream(lineFile))) {
+            while (inputStream.hasNextLine()) {
+                String line = inputStream.nextLine().trim();
+                if (!line.isEmpty()) {
+                    handler.accept(line);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("Error: Could not load file " + lineFile);
+            return false;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Every position of the portfolio copied into primitive arrays, in-memory investments first,
+     * then the records still in the lazy file.
+     */
+    private static final class Positions {
+        final String[] symbols;
+        final boolean[] isStock;
+        final int[] quantities;
+        final double[] prices;
+        int count;
+
+        Positions(int size) {
+            symbols = new String[size];
+            isStock = new boolean[size];
+            quantities = new int[size];
+            prices = new double[size];
+        }
+
+        void add(Investment investment) {
+            symbols[count] = investment.getSymbol();
+            isStock[count] = investment instanceof Stock;
+            quantities[count] = investment.getQuantity();
+            prices[count++] = investment.getPrice();
+        }
     }
 
     /**
-     * Finds an investment by its symbol from the investments list.
+     * Copies every position into primitive arrays; in lazy mode the file is streamed once.
+     * 
+     * @return The positions, or null if the lazy file could not be read.
+     */
+    private Positions copyPositions() {
+        Positions positions = new Positions(investments.size() + (lazyFile == null ? 0 : lazyFile.size()));
+        for (Investment investment : investments) {
+            positions.add(investment);
+        }
+        if (lazyFile != null) {
+            try {
+                lazyFile.forEach(positions::add);
+            } catch (IOException e) {
+                System.out.println("Error: Could not read investments from file.");
+                return null;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Prints the risk figures of one gain distribution.
+     * 
+     * @param label The name of the group of positions.
+     * @param distribution The simulated gains of the group.
+     */
+    private void printRisk(String label, RiskSimulator.Distribution distribution) {
+        System.out.println(label + ":");
+        System.out.printf("  Mean gain: $%.2f%n", distribution.mean());
+        System.out.printf("  VaR 95%%: $%.2f, CVaR 95%%: $%.2f%n", distribution.valueAtRisk(0.95), distribution.conditionalValueAtRisk(0.95));
+        System.out.printf("  VaR 99%%: $%.2f, CVaR 99%%: $%.2f%n", distribution.valueAtRisk(0.99), distribution.conditionalValueAtRisk(0.99));
+        System.out.printf("  Gain percentiles: 1st $%.2f, 5th $%.2f, 50th $%.2f, 95th $%.2f, 99th $%.2f%n",
+                distribution.percentile(1), distribution.percentile(5), distribution.percentile(50),
+                distribution.percentile(95), distribution.percentile(99));
+    }
+
+    /**
+     * Streams the investments still held by the lazy file that match a query.
+     * An exact symbol is fetched directly unless the file repeats symbols, otherwise the file is read
+     * once as the stream is consumed.
+     *
+     * @param query The search criteria.
+     * @return The matching investments from the file.
+     */
+    private Stream<Investment> queryFile(InvestmentQuery query) {
+        try {
+            if (query.hasSymbol() && !lazyFile.hasDuplicates()) {
+                return Stream.ofNullable(lazyFile.fetch(query.getSymbol())).filter(query::matches);
+            }
+            return lazyFile.stream().filter(query::matches);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds an investment by its symbol using the symbol index.
      * This method checks both stocks and mutual funds.
      * 
      * @param symbol The symbol of the investment to search for.
      * @return The investment with the given symbol, or null if not found.
      */
-    private Investment findInvestment(String symbol) {
-        for (Investment investment : investments) { // Loop through the unified list
-            if (investment.getSymbol().equalsIgnoreCase(symbol)) {
+    Investment findInvestment(String symbol) {
+        List<Integer> positions = symbolIndex.get(symbol.toLowerCase());
+        if (positions != null) {
+            return investments.get(positions.get(0));
+        }
+
+        // In lazy mode, load the investment from the file and keep it in memory from now on
+        if (lazyFile != null) {
+            try {
+                Investment investment = lazyFile.take(symbol);
+                if (investment != null) {
+                    addInvestment(investment);
+                }
                 return investment;
+            } catch (IOException e) {
+                System.out.println("Error: Could not read investment " + symbol + " from file.");
             }
         }
         return null; // Return null if not found
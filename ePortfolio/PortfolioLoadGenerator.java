@@ -0,0 +1,205 @@
+package ePortfolio;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The PortfolioLoadGenerator class measures the throughput and latency of a running PortfolioService.
+ * It opens one connection per simulated client and sends a mix of price updates, gain queries,
+ * searches, buys and sells against a set of symbols it creates on startup.
+ * At the end it reports the requests per second and the latency percentiles.
+ * <p>
+ * By default the load runs against a scratch service started in the same process on an empty portfolio
+ * that is never saved, so no portfolio or ledger file is touched. When a port is given, the load runs
+ * against that service instead and changes the portfolio it serves; the generator then sells every
+ * unit it bought before it exits, but those sales are still recorded in that portfolio's ledger.
+ */
+
+public class PortfolioLoadGenerator {
+
+    /** Number of symbols the load is spread over. */
+    private static final int SYMBOLS = 50;
+
+    /** Units of each symbol bought before the load starts. */
+    private static final int INITIAL_UNITS = 1000000;
+
+    /**
+     * Runs the load generator.
+     *
+     * @param args Command-line arguments: the port of a running service, or "-" for a scratch service,
+     *             the number of clients and the requests per client.
+     */
+    public static void main(String[] args) throws Exception {
+        boolean scratch = args.length == 0 || args[0].equals("-");
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requestsPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        // The scratch service serves an empty portfolio with no file, so nothing is saved
+        PortfolioService scratchService = null;
+        int port;
+        if (scratch) {
+            scratchService = new PortfolioService(new Portfolio(), 0);
+            new Thread(scratchService::serve, "portfolio-service").start();
+            port = scratchService.getPort();
+            System.out.println("Running against a scratch service on port " + port + "; no files are changed.");
+        } else {
+            port = Integer.parseInt(args[0]);
+            System.out.println("Running against the service on port " + port + "; its portfolio will be changed.");
+        }
+
+        // Create the symbols so every client finds them, and count the units held of each
+        AtomicIntegerArray held = new AtomicIntegerArray(SYMBOLS);
+        try (Connection setup = new Connection(port)) {
+            for (int i = 0; i < SYMBOLS; i++) {
+                if (setup.send("BUY stock LOAD" + i + " " + INITIAL_UNITS + " 10.00 Load Test Stock " + i).startsWith("OK")) {
+                    held.addAndGet(i, INITIAL_UNITS);
+                }
+            }
+        }
+
+        ExecutorService executor = PortfolioService.newThreadPerTaskExecutor();
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            results.add(executor.submit(() -> runClient(port, requestsPerClient, new SplittableRandom(seed), held)));
+        }
+
+        long[] latencies = new long[clients * requestsPerClient];
+        int count = 0;
+        for (Future<long[]> result : results) {
+            long[] clientLatencies = result.get();
+            System.arraycopy(clientLatencies, 0, latencies, count, clientLatencies.length);
+            count += clientLatencies.length;
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        if (scratchService != null) {
+            scratchService.stop();
+        } else {
+            // Sell everything the load bought so the served portfolio is left without LOAD positions
+            try (Connection cleanup = new Connection(port)) {
+                for (int i = 0; i < SYMBOLS; i++) {
+                    if (held.get(i) > 0) {
+                        cleanup.send("SELL LOAD" + i + " " + held.get(i) + " 10.00");
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(latencies);
+        System.out.println("Clients: " + clients + ", requests: " + latencies.length);
+        System.out.printf("Throughput: %.0f requests/s%n", latencies.length / (elapsed / 1e9));
+        System.out.printf("Latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e3);
+    }
+
+    /**
+     * Sends the given number of random requests over one connection.
+     *
+     * @param port The service port.
+     * @param requests The number of requests to send.
+     * @param random The random source for this client.
+     * @param held The units held of each symbol, updated for every buy and sell that succeeds.
+     * @return The latency of each request in nanoseconds.
+     * @throws IOException If the connection fails.
+     */
+    private static long[] runClient(int port, int requests, SplittableRandom random, AtomicIntegerArray held) throws IOException {
+        long[] latencies = new long[requests];
+        try (Connection connection = new Connection(port)) {
+            for (int i = 0; i < requests; i++) {
+                int index = random.nextInt(SYMBOLS);
+                String symbol = "LOAD" + index;
+                int pick = random.nextInt(100);
+                String request;
+                if (pick < 40) {
+                    request = "PRICE " + symbol + " " + (9 + random.nextInt(200) / 100.0);
+                } else if (pick < 60) {
+                    request = "GAIN " + symbol;
+                } else if (pick < 75) {
+                    request = "SEARCH " + symbol + " - -";
+                } else if (pick < 90) {
+                    request = "BUY stock " + symbol + " 1 10.00";
+                } else {
+                    request = "SELL " + symbol + " 1 10.00";
+                }
+
+                long start = System.nanoTime();
+                String response = connection.send(request);
+                latencies[i] = System.nanoTime() - start;
+
+                if (response.startsWith("OK") && pick >= 75) {
+                    held.addAndGet(index, pick < 90 ? 1 : -1);
+                }
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Returns the latency at the given percentile of a sorted array, in microseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+
+    /**
+     * A client connection that sends one request and reads its full response.
+     */
+    private static final class Connection implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final BufferedWriter out;
+
+        Connection(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Sends a request and reads the response, including the result lines of a search.
+         *
+         * @param request The request line.
+         * @return The first response line.
+         * @throws IOException If the connection fails.
+         */
+        String send(String request) throws IOException {
+            out.write(request);
+            out.newLine();
+            out.flush();
+            String response = in.readLine();
+            if (response == null) {
+                throw new EOFException("Service closed the connection");
+            }
+            if (request.startsWith("SEARCH") && response.startsWith("OK ")) {
+                int results = Integer.parseInt(response.substring(3).trim());
+                for (int i = 0; i < results; i++) {
+                    in.readLine();
+                }
+            }
+            return response;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.write("QUIT");
+            out.newLine();
+            out.flush();
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package ePortfolio;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * The PortfolioService class serves one in-memory portfolio to many local clients at once.
+ * It listens on the loopback interface and speaks a line-based text protocol, one request per line:
+ * <pre>
+ * BUY &lt;stock|mutualfund&gt; &lt;symbol&gt; &lt;quantity&gt; &lt;price&gt; [name...]
+ * SELL &lt;symbol&gt; &lt;quantity&gt; &lt;price&gt;
+ * PRICE &lt;symbol&gt; &lt;price&gt;
+ * GAIN [symbol]
+ * SEARCH &lt;symbol|-&gt; &lt;lowerBound|-&gt; &lt;upperBound|-&gt; [keywords...]
+ * QUIT
+ * </pre>
+ * Every response starts with "OK" or "ERR". SEARCH answers "OK n" followed by n result lines.
+ * Each connection runs on its own thread (a virtual thread on Java 21 or later).
+ * Changes to one investment are serialized by a per-symbol lock, while adding or removing
+ * investments takes the portfolio-wide write lock.
+ */
+
+public class PortfolioService {
+
+    /** Default loopback port of the service. */
+    public static final int DEFAULT_PORT = 7070;
+
+    private final Portfolio portfolio;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+
+    /** The open client connections, closed by stop(). */
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    /** Guards the structure of the portfolio: the investments list and the keyword index. */
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+
+    /** One lock per lowercased symbol, serializing changes to that investment. */
+    private final ConcurrentHashMap<String, Object> symbolLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a service for the given portfolio, bound to the loopback interface.
+     * Investments of a lazily opened portfolio are loaded into memory first.
+     *
+     * @param portfolio The portfolio to serve.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public PortfolioService(Portfolio portfolio, int port) throws IOException {
+        this.portfolio = portfolio;
+        this.portfolio.materializeAll();
+        this.serverSocket = new ServerSocket(port, 512, InetAddress.getLoopbackAddress());
+        this.connections = newThreadPerTaskExecutor();
+    }
+
+    /**
+     * Runs the service for a portfolio file until "quit" is entered on the console,
+     * then saves the portfolio back to the file.
+     *
+     * @param args Command-line arguments: the portfolio file name and an optional port.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java ePortfolio.PortfolioService <filename> [port]");
+            return;
+        }
+
+        String filename = args[0];
+        int port = args.length == 2 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+
+        Portfolio portfolio = new Portfolio();
+        portfolio.readFile(filename);
+
+        PortfolioService service;
+        try {
+            service = new PortfolioService(portfolio, port);
+        } catch (IOException e) {
+            System.out.println("Error: Could not listen on port " + port);
+            return;
+        }
+        Thread acceptor = new Thread(service::serve, "portfolio-service");
+        acceptor.start();
+        System.out.println("Portfolio service listening on 127.0.0.1:" + service.getPort() + ". Enter quit to stop.");
+
+        Scanner scanner = new Scanner(System.in);
+        while (scanner.hasNextLine()) {
+            String command = scanner.nextLine().trim().toLowerCase();
+            if (command.equals("quit") || command.equals("q")) {
+                break;
+            }
+            System.out.println("Invalid command. Enter quit to stop the service.");
+        }
+
+        service.stop();
+        service.save(filename);
+    }
+
+    /**
+     * Returns the port the service is listening on.
+     *
+     * @return The local port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the service is stopped, handing each one to its own thread.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                clients.add(socket);
+                if (serverSocket.isClosed()) {
+                    socket.close();  // Accepted while stop() was closing the other connections
+                    break;
+                }
+                connections.execute(() -> handleConnection(socket));
+            } catch (SocketException e) {
+                // Thrown by accept() once stop() closes the server socket
+                break;
+            } catch (IOException e) {
+                System.out.println("Error accepting connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits briefly for requests in progress to finish.
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.out.println("Error closing the service socket.");
+        }
+        // A client blocked reading its next request would otherwise keep its connection open
+        for (Socket socket : clients) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed by the client
+            }
+        }
+        connections.shutdown();
+        try {
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Saves the portfolio to a file while holding the write lock, so no request changes it mid-save.
+     *
+     * @param fileName The name of the file to save to.
+     */
+    public void save(String fileName) {
+        structureLock.writeLock().lock();
+        try {
+            portfolio.saveToFile(fileName);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads requests from one connection and writes a response to each until the client quits.
+     *
+     * @param socket The client connection.
+     */
+    private void handleConnection(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            // Responses are small and flushed one at a time, so do not wait to coalesce them
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String request = line.trim();
+                if (request.equalsIgnoreCase("quit")) {
+                    break;
+                }
+                out.write(handleRequest(request));
+                out.newLine();
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away or the service was stopped; nothing else to clean up
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    /**
+     * Parses and executes one request.
+     *
+     * @param request The request line.
+     * @return The response, without a trailing line break.
+     */
+    String handleRequest(String request) {
+        String[] token = request.split("\\s+");
+        try {
+            return switch (token[0].toLowerCase()) {
+                case "buy" -> buy(token[1].toLowerCase(), token[2], Integer.parseInt(token[3]), Double.parseDouble(token[4]),
+                        joinFrom(token, 5));
+                case "sell" -> sell(token[1], Integer.parseInt(token[2]), Double.parseDouble(token[3]));
+                case "price" -> updatePrice(token[1], Double.parseDouble(token[2]));
+                case "gain" -> token.length > 1 ? gain(token[1]) : totalGain();
+                case "search" -> search(token[1], bound(token[2], Double.NEGATIVE_INFINITY), bound(token[3], Double.POSITIVE_INFINITY),
+                        joinFrom(token, 4));
+                default -> "ERR Unknown command " + token[0];
+            };
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return "ERR Missing arguments for " + token[0];
+        } catch (NumberFormatException e) {
+            return "ERR Invalid number: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Buys units of an existing investment, or adds a new investment to the portfolio.
+     *
+     * @return The response line.
+     */
+    private String buy(String type, String symbol, int quantity, double price, String name) {
+        if (quantity <= 0 || price < 0) {
+            return "ERR Quantity must be positive and price cannot be negative";
+        }
+
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(symbol)) {
+                Investment investment = portfolio.findInvestment(symbol);
+                if (investment != null) {
+                    portfolio.buyMore(investment, quantity, price);
+                    return "OK " + investment.getQuantity();
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+
+        // New symbol: adding to the list and keyword index needs exclusive access
+        structureLock.writeLock().lock();
+        try {
+            Investment investment = portfolio.findInvestment(symbol);
+            if (investment != null) {
+                portfolio.buyMore(investment, quantity, price);
+                return "OK " + investment.getQuantity();
+            }
+            Investment newInvestment = Portfolio.createInvestment(type, symbol, name.isEmpty() ? symbol : name, quantity, price);
+            if (newInvestment == null) {
+                return "ERR Invalid investment type " + type;
+            }
+            portfolio.addInvestment(newInvestment);
+            return "OK " + newInvestment.getQuantity();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sells units of an investment, removing it from the portfolio once fully sold.
+     *
+     * @return The response line with the gain from the sale.
+     */
+    private String sell(String symbol, int quantity, double price) {
+        if (quantity <= 0) {
+            return "ERR Quantity must be positive";
+        }
+
+        double gainFromSale;
+        boolean fullySold;
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(symbol)) {
+                Investment investment = portfolio.findInvestment(symbol);
+                if (investment == null) {
+                    return "ERR Investment with the given symbol not found";
+                }
+                if (quantity > investment.getQuantity()) {
+                    return "ERR Insufficient quantity to sell";
+                }
+                gainFromSale = investment.applySale(quantity, price);
+                fullySold = investment.getQuantity() == 0;
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+
+        portfolio.recordSale(symbol, quantity, price, gainFromSale);
+
+        if (fullySold) {
+            structureLock.writeLock().lock();
+            try {
+                // Check again, a buy may have come in before the write lock was taken
+                Investment investment = portfolio.findInvestment(symbol);
+                if (investment != null && investment.getQuantity() == 0) {
+                    portfolio.removeInvestment(investment);
+                }
+            } finally {
+                structureLock.writeLock().unlock();
+            }
+        }
+        return "OK " + String.format("%.2f", gainFromSale);
+    }
+
+    /**
+     * Updates the price of one investment.
+     *
+     * @return The response line.
+     */
+    private String updatePrice(String symbol, double price) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(symbol)) {
+                Investment investment = portfolio.findInvestment(symbol);
+                if (investment == null) {
+                    return "ERR Investment with the given symbol not found";
+                }
+                investment.updatePrice(price);
+                return "OK " + investment.getPrice();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calculates the gain of one investment at its current price.
+     *
+     * @return The response line with the gain.
+     */
+    private String gain(String symbol) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(symbol)) {
+                Investment investment = portfolio.findInvestment(symbol);
+                if (investment == null) {
+                    return "ERR Investment with the given symbol not found";
+                }
+                return "OK " + String.format("%.2f", investment.calculateUnrealizedGain());
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calculates the total gain of the portfolio at current prices.
+     *
+     * @return The response line with the total gain.
+     */
+    private String totalGain() {
+        double totalGain = 0;
+        structureLock.readLock().lock();
+        try {
+            for (Investment investment : portfolio.getInvestments()) {
+                synchronized (lockFor(investment.getSymbol())) {
+                    totalGain += investment.calculateUnrealizedGain();
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        return "OK " + String.format("%.2f", totalGain);
+    }
+
+    /**
+     * Searches the portfolio by symbol, keywords and price range.
+     *
+     * @return "OK n" followed by one line per matching investment.
+     */
+    private String search(String symbol, double lowerBound, double upperBound, String keywordInput) {
+        String[] keywords = keywordInput.isEmpty() ? new String[0] : keywordInput.split(" ");
+        StringBuilder response = new StringBuilder();
+        int count = 0;
+
+        structureLock.readLock().lock();
+        try {
+            InvestmentQuery query = new InvestmentQuery(symbol.equals("-") ? "" : symbol, keywords, lowerBound, upperBound);
+            try (Stream<Investment> results = portfolio.query(query)) {
+                Iterator<Investment> matches = results.iterator();
+                while (matches.hasNext()) {
+                    Investment investment = matches.next();
+                    synchronized (lockFor(investment.getSymbol())) {
+                        response.append(System.lineSeparator()).append(investment);
+                    }
+                    count++;
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        return "OK " + count + response;
+    }
+
+
+    //helper methods
+
+    /**
+     * Returns the lock serializing changes to the given symbol.
+     *
+     * @param symbol The symbol (case insensitive).
+     * @return The lock object for that symbol.
+     */
+    private Object lockFor(String symbol) {
+        return symbolLocks.computeIfAbsent(symbol.toLowerCase(), key -> new Object());
+    }
+
+    /**
+     * Parses a price bound, where "-" means no bound.
+     */
+    private static double bound(String token, double noBound) {
+        return token.equals("-") ? noBound : Double.parseDouble(token);
+    }
+
+    /**
+     * Joins the tokens from the given index onward with single spaces.
+     */
+    private static String joinFrom(String[] token, int from) {
+        return from >= token.length ? "" : String.join(" ", Arrays.copyOfRange(token, from, token.length));
+    }
+
+    /**
+     * Creates an executor that starts a new thread for every task. Virtual threads are used
+     * when the running Java version has them (21 or later), otherwise platform threads.
+     *
+     * @return The executor.
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ePortfolio;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The QueryPlanner class picks how to answer an InvestmentQuery from the portfolio's indexes by fixed rules:
+ * an exact symbol uses the symbol index (the lots of one symbol), otherwise keywords use the shortest
+ * posting list among the query's keywords, otherwise every investment is scanned.
+ * The remaining criteria are checked on each row. A keyword with no postings short-circuits the query
+ * to an empty result. Prices change in place on each investment, so a price range is always checked row by row.
+ */
+
+class QueryPlanner {
+
+    /** The ways a query can read the portfolio. */
+    enum AccessPath { SYMBOL, KEYWORD, SCAN, EMPTY }
+
+    private final List<Investment> investments;
+    private final Map<String, List<Integer>> symbolIndex;
+    private final Map<String, List<Integer>> keywordIndex;
+
+    /**
+     * Constructs a planner over the portfolio's investments and indexes. The planner reads
+     * the given collections directly, so it always sees the current contents.
+     *
+     * @param investments The investments list.
+     * @param symbolIndex The index from lowercased symbol to positions.
+     * @param keywordIndex The index from lowercased name keyword to positions.
+     */
+    QueryPlanner(List<Investment> investments, Map<String, List<Integer>> symbolIndex, Map<String, List<Integer>> keywordIndex) {
+        this.investments = investments;
+        this.symbolIndex = symbolIndex;
+        this.keywordIndex = keywordIndex;
+    }
+
+    /**
+     * The access path chosen for a query, with the rows it will visit.
+     */
+    static final class Plan {
+        final AccessPath path;
+        final List<Integer> positions;
+        final long rowsToVisit;
+        final String detail;
+
+        Plan(AccessPath path, List<Integer> positions, long rowsToVisit, String detail) {
+            this.path = path;
+            this.positions = positions;
+            this.rowsToVisit = rowsToVisit;
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + detail + " (" + rowsToVisit + " rows to visit)";
+        }
+    }
+
+    /**
+     * Chooses the access path for a query.
+     *
+     * @param query The query to plan.
+     * @return The plan.
+     */
+    Plan plan(InvestmentQuery query) {
+        int total = investments.size();
+
+        // Exact symbol: a hash lookup visits only the lots of that symbol, usually one
+        if (query.hasSymbol()) {
+            List<Integer> positions = symbolIndex.get(query.getSymbol().toLowerCase());
+            if (positions == null) {
+                return new Plan(AccessPath.EMPTY, List.of(), 0, "symbol " + query.getSymbol() + " not in memory");
+            }
+            return new Plan(AccessPath.SYMBOL, positions, positions.size(), "symbol " + query.getSymbol());
+        }
+
+        // Keywords: start from the shortest posting list, stop at once if a keyword is unknown
+        if (query.hasKeywords()) {
+            String bestKeyword = null;
+            List<Integer> bestPositions = null;
+            for (String keyword : query.getKeywords()) {
+                List<Integer> positions = keywordIndex.get(keyword);
+                if (positions == null) {
+                    return new Plan(AccessPath.EMPTY, List.of(), 0, "keyword '" + keyword + "' not indexed");
+                }
+                if (bestPositions == null || positions.size() < bestPositions.size()) {
+                    bestKeyword = keyword;
+                    bestPositions = positions;
+                }
+            }
+            // A posting list never has more rows than a scan, so it always wins here
+            return new Plan(AccessPath.KEYWORD, bestPositions, bestPositions.size(), "keyword '" + bestKeyword + "'");
+        }
+
+        return new Plan(AccessPath.SCAN, null, total, "all investments");
+    }
+
+    /**
+     * Runs a plan, returning a lazily evaluated stream of the matching investments.
+     * The stream reads the portfolio as it is consumed, so it should be consumed before the portfolio changes.
+     *
+     * @param plan The plan from plan().
+     * @param query The query the plan was made for.
+     * @return The matching investments.
+     */
+    Stream<Investment> execute(Plan plan, InvestmentQuery query) {
+        return switch (plan.path) {
+            case EMPTY -> Stream.empty();
+            case SYMBOL, KEYWORD -> plan.positions.stream().map(investments::get).filter(query::matches);
+            case SCAN -> investments.stream().filter(query::matches);
+        };
+    }
+}
@@ -0,0 +1,254 @@
+package ePortfolio;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The RealizedGainLedger class records the gain realized by every sale and answers
+ * "realized gain between two dates" for one symbol or for the whole portfolio.
+ * <p>
+ * For each symbol, and for the portfolio as a whole, the ledger keeps the sale dates in order
+ * together with running (prefix) sums of the gains. A date range query is then two binary
+ * searches and one subtraction, so it takes logarithmic time however many sales are recorded.
+ * Sales are normally recorded in date order, which makes recording a constant-time append.
+ * <p>
+ * Sales are also appended to a ledger file so they survive restarts. The file is kept open behind a
+ * buffer, so recording a sale rarely touches the disk; the buffer is written out by flush(), which the
+ * portfolio calls whenever it saves. The file is only read when the ledger is first queried, so
+ * recording sales does not slow down startup.
+ */
+
+public class RealizedGainLedger {
+
+    /** The sales of one symbol, or of the whole portfolio, in date order. */
+    private static final class Series {
+        private int size;
+        private int[] days = new int[16];
+        /** prefix[i] is the sum of the first i gains. */
+        private double[] prefix = new double[17];
+
+        /**
+         * Adds a sale. In-order dates are appended; an earlier date is inserted and the sums after it are recomputed.
+         */
+        void add(int day, double gain) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                prefix = Arrays.copyOf(prefix, size * 2 + 1);
+            }
+            if (size == 0 || day >= days[size - 1]) {
+                days[size] = day;
+                prefix[size + 1] = prefix[size] + gain;
+                size++;
+                return;
+            }
+
+            // An earlier date, for example from an imported ledger: insert it and shift the later sums
+            int position = upperBound(day);
+            System.arraycopy(days, position, days, position + 1, size - position);
+            System.arraycopy(prefix, position + 1, prefix, position + 2, size - position);
+            days[position] = day;
+            prefix[position + 1] = prefix[position] + gain;
+            size++;
+            for (int i = position + 2; i <= size; i++) {
+                prefix[i] += gain;
+            }
+        }
+
+        /**
+         * Returns the sum of the gains between two days, inclusive.
+         */
+        double sum(int fromDay, int toDay) {
+            return prefix[upperBound(toDay)] - prefix[lowerBound(fromDay)];
+        }
+
+        /**
+         * Returns the number of sales between two days, inclusive.
+         */
+        int count(int fromDay, int toDay) {
+            return Math.max(0, upperBound(toDay) - lowerBound(fromDay));
+        }
+
+        /** Index of the first sale on or after the day. */
+        private int lowerBound(int day) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] < day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Index of the first sale after the day. */
+        private int upperBound(int day) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] <= day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final String fileName;
+    private boolean loaded;
+    /** Buffered appender to the ledger file, opened on the first sale. */
+    private Writer writer;
+    private final Series total = new Series();
+    private final HashMap<String, Series> bySymbol = new HashMap<>();
+
+    /**
+     * Constructs a ledger backed by the given file.
+     *
+     * @param fileName The ledger file, or null to keep the ledger in memory only.
+     */
+    public RealizedGainLedger(String fileName) {
+        this.fileName = fileName;
+        this.loaded = fileName == null;
+    }
+
+    /**
+     * Records the gain realized by a sale and appends it to the ledger file.
+     *
+     * @param date The date of the sale.
+     * @param symbol The symbol sold.
+     * @param quantity The quantity sold.
+     * @param price The price per unit.
+     * @param gain The gain realized by the sale.
+     */
+    public synchronized void record(LocalDate date, String symbol, int quantity, double price, double gain) {
+        append(date, symbol, quantity, price, gain);
+        // An unloaded ledger picks the sale up from the file when it is first queried
+        if (loaded) {
+            add(date, symbol, gain);
+        }
+    }
+
+    /**
+     * Records the gains realized by a batch of sales, as executeBatch produces them.
+     * Each sale is recorded like a single sale; the buffered appender means the whole batch
+     * costs at most one file open, and nothing reaches the disk until flush().
+     *
+     * @param date The date of the sales.
+     * @param sales The sell orders, in order.
+     * @param gains The gain realized by each sale, at the same index as its order.
+     */
+    public synchronized void record(LocalDate date, List<Order> sales, double[] gains) {
+        for (int i = 0; i < sales.size(); i++) {
+            Order sale = sales.get(i);
+            record(date, sale.getSymbol(), sale.getQuantity(), sale.getPrice(), gains[i]);
+        }
+    }
+
+    /**
+     * Writes the buffered sales to the ledger file.
+     */
+    public synchronized void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.out.println("Error writing to file " + fileName);
+        }
+    }
+
+    /**
+     * Returns the gain realized between two dates, inclusive.
+     *
+     * @param symbol The symbol, or an empty string for the whole portfolio.
+     * @param from The first date.
+     * @param to The last date.
+     * @return The realized gain.
+     */
+    public synchronized double realizedGain(String symbol, LocalDate from, LocalDate to) {
+        Series series = series(symbol);
+        return series == null ? 0 : series.sum((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * Returns the number of sales between two dates, inclusive.
+     *
+     * @param symbol The symbol, or an empty string for the whole portfolio.
+     * @param from The first date.
+     * @param to The last date.
+     * @return The number of sales.
+     */
+    public synchronized int sales(String symbol, LocalDate from, LocalDate to) {
+        Series series = series(symbol);
+        return series == null ? 0 : series.count((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+
+    //helper methods
+
+    /**
+     * Appends one sale to the ledger file's buffer, opening the file on first use.
+     */
+    private void append(LocalDate date, String symbol, int quantity, double price, double gain) {
+        if (fileName == null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new FileWriter(fileName, true), 1 << 16);
+            }
+            writer.write(date + "," + symbol + "," + quantity + "," + price + "," + gain + System.lineSeparator());
+        } catch (IOException e) {
+            System.out.println("Error writing to file " + fileName);
+        }
+    }
+
+    /**
+     * Returns the series for a symbol, loading the ledger file first if needed.
+     */
+    private Series series(String symbol) {
+        load();
+        return symbol.isEmpty() ? total : bySymbol.get(symbol.toLowerCase());
+    }
+
+    /**
+     * Adds a sale to the portfolio series and the symbol's series.
+     */
+    private void add(LocalDate date, String symbol, double gain) {
+        int day = (int) date.toEpochDay();
+        total.add(day, gain);
+        bySymbol.computeIfAbsent(symbol.toLowerCase(), key -> new Series()).add(day, gain);
+    }
+
+    /**
+     * Reads every sale from the ledger file the first time it is needed.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        flush();  // Sales recorded before the first query are still in the buffer
+
+        try (Scanner inputStream = new Scanner(new BufferedInputStream(new FileInputStream(fileName)))) {
+            while (inputStream.hasNextLine()) {
+                String[] token = inputStream.nextLine().split(",");
+                if (token.length == 5) {
+                    add(LocalDate.parse(token[0]), token[1], Double.parseDouble(token[4]));
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // No sales recorded yet
+        }
+    }
+}
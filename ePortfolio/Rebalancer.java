@@ -0,0 +1,273 @@
+package ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Rebalancer class works out the trades that bring a portfolio to its target weights.
+ * <p>
+ * A target weight is a fraction of the total portfolio value and can be given for a symbol or for an
+ * investment type. Symbols with their own weight get exactly that weight. The rest of a type's weight is
+ * shared by its other positions in proportion to their current value, so they keep their relative sizes.
+ * Positions without any target are left alone. Prices can be given for any symbol; other positions are
+ * valued at their current price.
+ * <p>
+ * Positions are passed in as primitive arrays. Totals are gathered in one pass over them and the orders
+ * are produced in a second pass, so the work is linear in the number of positions.
+ * Trades are rounded to whole units. A stock trade pays Investment.COMMISSION, so stock buys are reduced
+ * to leave room for it, and stock trades worth no more than the commission are not made. Mutual fund trades
+ * are sized as if they paid no commission. Executed through Portfolio.executeBatch, however, every trade books
+ * Investment.COMMISSION, funds included, so the plan's commission total counts it for every order.
+ */
+
+public class Rebalancer {
+
+    private static final int STOCK = 0;
+    private static final int MUTUAL_FUND = 1;
+
+    /** Tolerance for weights that add up to slightly more than 1 through rounding. */
+    private static final double EPSILON = 1e-9;
+
+    private final Map<String, Double> symbolWeights = new HashMap<>();
+    private final double[] typeWeights = {Double.NaN, Double.NaN};
+    private final Map<String, Double> prices = new HashMap<>();
+
+    /**
+     * The trades computed by the rebalancer.
+     */
+    public static final class Plan {
+        private final List<Order> orders;
+        private final double totalValue;
+        private final double turnover;
+        private final double commission;
+        private final List<String> unmatched;
+
+        private Plan(List<Order> orders, double totalValue, double turnover, double commission, List<String> unmatched) {
+            this.orders = Collections.unmodifiableList(orders);
+            this.totalValue = totalValue;
+            this.turnover = turnover;
+            this.commission = commission;
+            this.unmatched = Collections.unmodifiableList(unmatched);
+        }
+
+        /**
+         * Returns the commission the orders are charged when executed as a batch:
+         * Investment.COMMISSION for every order, mutual funds included.
+         *
+         * @return The total commission.
+         */
+        public double getCommission() { return commission; }
+
+        // Getters
+        public List<Order> getOrders() { return orders; }
+        public double getTotalValue() { return totalValue; }
+        public double getTurnover() { return turnover; }
+        public List<String> getUnmatched() { return unmatched; }
+    }
+
+    /**
+     * Adds a target or price from one line of a target file. The accepted formats are
+     * "symbol &lt;symbol&gt; &lt;weight&gt;", "type &lt;stock|mutualfund&gt; &lt;weight&gt;" and
+     * "price &lt;symbol&gt; &lt;price&gt;", with weights as fractions between 0 and 1.
+     *
+     * @param line The line to parse.
+     * @throws IllegalArgumentException If the line is not a valid target or price.
+     */
+    public void addTarget(String line) {
+        String[] token = line.trim().split("\\s+");
+        if (token.length != 3) {
+            throw new IllegalArgumentException("Invalid target: " + line);
+        }
+
+        try {
+            double value = Double.parseDouble(token[2]);
+            switch (token[0].toLowerCase()) {
+                case "symbol" -> setSymbolWeight(token[1], value);
+                case "type" -> setTypeWeight(token[1], value);
+                case "price" -> setPrice(token[1], value);
+                default -> throw new IllegalArgumentException("Invalid target: " + line);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid target: " + line);
+        }
+    }
+
+    /**
+     * Sets the target weight of a symbol.
+     *
+     * @param symbol The symbol.
+     * @param weight The fraction of the portfolio value, between 0 and 1.
+     * @throws IllegalArgumentException If the weight is out of range.
+     */
+    public void setSymbolWeight(String symbol, double weight) {
+        checkWeight(weight);
+        symbolWeights.put(symbol.toLowerCase(), weight);
+    }
+
+    /**
+     * Sets the target weight of an investment type.
+     *
+     * @param type The investment type ("stock" or "mutualfund").
+     * @param weight The fraction of the portfolio value, between 0 and 1.
+     * @throws IllegalArgumentException If the type is unknown or the weight is out of range.
+     */
+    public void setTypeWeight(String type, double weight) {
+        checkWeight(weight);
+        switch (type.toLowerCase()) {
+            case "stock" -> typeWeights[STOCK] = weight;
+            case "mutualfund" -> typeWeights[MUTUAL_FUND] = weight;
+            default -> throw new IllegalArgumentException("Invalid investment type: " + type);
+        }
+    }
+
+    /**
+     * Sets the price a symbol is valued and traded at.
+     *
+     * @param symbol The symbol.
+     * @param price The price per unit.
+     * @throws IllegalArgumentException If the price is not positive.
+     */
+    public void setPrice(String symbol, double price) {
+        if (!(price > 0)) {
+            throw new IllegalArgumentException("Price must be positive: " + symbol + " " + price);
+        }
+        prices.put(symbol.toLowerCase(), price);
+    }
+
+    /**
+     * Computes the trades that bring the given positions to the targets.
+     * Sells come before buys, so the orders can be executed as one batch.
+     *
+     * @param symbols The symbol of each position.
+     * @param isStock Whether each position is a stock (true) or a mutual fund (false).
+     * @param quantities The quantity held of each position.
+     * @param currentPrices The current price of each position, used when no price was set for its symbol.
+     * @return The trades.
+     * @throws IllegalArgumentException If the symbol weights or the type weights add up to more than 1.
+     */
+    public Plan plan(String[] symbols, boolean[] isStock, int[] quantities, double[] currentPrices) {
+        checkTotals();
+        int size = symbols.length;
+        boolean lookUp = !symbolWeights.isEmpty() || !prices.isEmpty();
+
+        // First pass: value every position and total the weights and values per type
+        double[] price = new double[size];
+        double[] weight = new double[size];
+        double totalValue = 0;
+        double[] explicitWeight = new double[2];
+        double[] sharedValue = new double[2];
+        Set<String> matched = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            int type = isStock[i] ? STOCK : MUTUAL_FUND;
+            Double symbolWeight = null;
+            Double symbolPrice = null;
+            if (lookUp) {
+                String key = symbols[i].toLowerCase();
+                symbolWeight = symbolWeights.get(key);
+                symbolPrice = prices.get(key);
+                if (symbolWeight != null) {
+                    matched.add(key);
+                }
+            }
+            price[i] = symbolPrice != null ? symbolPrice : currentPrices[i];
+            double value = quantities[i] * price[i];
+            totalValue += value;
+
+            if (symbolWeight != null) {
+                weight[i] = symbolWeight;
+                explicitWeight[type] += symbolWeight;
+            } else {
+                weight[i] = Double.NaN;
+                sharedValue[type] += value;
+            }
+        }
+
+        // Each type's weight left after its own symbols is shared in proportion to current value
+        double[] scale = new double[2];
+        for (int type = 0; type < 2; type++) {
+            if (Double.isNaN(typeWeights[type])) {
+                scale[type] = 1;  // No type target, positions keep their value
+            } else if (sharedValue[type] > 0) {
+                scale[type] = Math.max(0, typeWeights[type] - explicitWeight[type]) * totalValue / sharedValue[type];
+            }
+        }
+
+        // Second pass: turn the difference from each target into a whole-unit trade
+        List<Order> sells = new ArrayList<>();
+        List<Order> buys = new ArrayList<>();
+        double turnover = 0;
+        double commission = 0;
+        for (int i = 0; i < size; i++) {
+            if (!(price[i] > 0)) {
+                continue;
+            }
+            int type = isStock[i] ? STOCK : MUTUAL_FUND;
+            double value = quantities[i] * price[i];
+            double target = Double.isNaN(weight[i]) ? value * scale[type] : weight[i] * totalValue;
+            double fee = isStock[i] ? Investment.COMMISSION : 0;
+            double difference = target - value;
+
+            int units;
+            if (difference > 0) {
+                // Leave room for the commission so the buy does not overshoot the target; never turn it into a sell
+                units = Math.max(0, (int) Math.floor((difference - fee) / price[i] + EPSILON));
+            } else {
+                units = -Math.min(quantities[i], (int) Math.floor(-difference / price[i] + EPSILON));
+            }
+            if (units == 0 || Math.abs(units) * price[i] <= fee) {
+                continue;  // Not worth the commission
+            }
+
+            String typeName = isStock[i] ? "stock" : "mutualfund";
+            if (units > 0) {
+                buys.add(Order.buy(typeName, symbols[i], symbols[i], units, price[i]));
+            } else {
+                sells.add(Order.sell(symbols[i], -units, price[i]));
+            }
+            turnover += Math.abs(units) * price[i];
+            commission += Investment.COMMISSION;  // What executeBatch books, whatever the type
+        }
+
+        List<String> unmatched = new ArrayList<>();
+        for (String symbol : symbolWeights.keySet()) {
+            if (!matched.contains(symbol)) {
+                unmatched.add(symbol);
+            }
+        }
+
+        sells.addAll(buys);
+        return new Plan(sells, totalValue, turnover, commission, unmatched);
+    }
+
+
+    //helper methods
+
+    /**
+     * Checks that a weight is a fraction between 0 and 1.
+     */
+    private static void checkWeight(double weight) {
+        if (!(weight >= 0 && weight <= 1)) {
+            throw new IllegalArgumentException("Weight must be between 0 and 1: " + weight);
+        }
+    }
+
+    /**
+     * Checks that neither the symbol weights nor the type weights add up to more than 1.
+     */
+    private void checkTotals() {
+        double symbolTotal = 0;
+        for (double weight : symbolWeights.values()) {
+            symbolTotal += weight;
+        }
+        double typeTotal = (Double.isNaN(typeWeights[STOCK]) ? 0 : typeWeights[STOCK])
+                + (Double.isNaN(typeWeights[MUTUAL_FUND]) ? 0 : typeWeights[MUTUAL_FUND]);
+        if (symbolTotal > 1 + EPSILON || typeTotal > 1 + EPSILON) {
+            throw new IllegalArgumentException("Target weights add up to more than 1.");
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package ePortfolio;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The ReportExporter class writes holdings or gains as CSV or JSON lines to a file or to standard output.
+ * <p>
+ * The exporter takes its snapshot when it is constructed: the values of the given investments are
+ * copied into primitive columns, and investments still on disk come from a file stream opened at the same time.
+ * After that it no longer reads the portfolio, so run() can execute on a background thread while other commands continue.
+ * The price of this is memory: the snapshot grows with the number of in-memory investments, because
+ * investments are changed in place and cannot be shared with the portfolio. Records on disk are not copied.
+ * Records are formatted into one reused line buffer and written through a fixed-size output buffer,
+ * so writing does not build a String per record.
+ */
+
+public class ReportExporter implements Runnable {
+
+    /** Output formats. */
+    public enum Format { CSV, JSON }
+
+    /** Report contents. */
+    public enum Report { HOLDINGS, GAINS }
+
+    /** Size of the output buffer in characters. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String[] HOLDINGS_COLUMNS = {"type", "symbol", "name", "quantity", "price", "bookValue"};
+    private static final String[] GAINS_COLUMNS = {"type", "symbol", "name", "quantity", "price", "bookValue", "saleValue", "gain"};
+
+    private final Report report;
+    private final Format format;
+    private final String destination;
+
+    // Snapshot of the in-memory investments, one entry per investment
+    private final int size;
+    private final boolean[] isStock;
+    private final String[] symbols;
+    private final String[] names;
+    private final int[] quantities;
+    private final double[] prices;
+    private final double[] bookValues;
+    private final double[] saleValues;
+
+    /** Investments still on disk, read from a file opened at snapshot time, or null. */
+    private final Stream<Investment> fileRecords;
+
+    /** Reused buffers for formatting one record. */
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] chars = new char[256];
+
+    /**
+     * Constructs an exporter and takes a snapshot of the given investments.
+     *
+     * @param investments The investments to export; their current values are copied immediately.
+     * @param fileRecords Investments to export after the snapshot, streamed one at a time, or null.
+     *                    The exporter closes this stream.
+     * @param report Whether to export holdings or gains.
+     * @param format The output format.
+     * @param destination The output file name, or "-" for standard output.
+     */
+    public ReportExporter(List<Investment> investments, Stream<Investment> fileRecords, Report report, Format format, String destination) {
+        this.report = report;
+        this.format = format;
+        this.destination = destination;
+        this.fileRecords = fileRecords;
+
+        size = investments.size();
+        isStock = new boolean[size];
+        symbols = new String[size];
+        names = new String[size];
+        quantities = new int[size];
+        prices = new double[size];
+        bookValues = new double[size];
+        saleValues = new double[size];
+        for (int i = 0; i < size; i++) {
+            Investment investment = investments.get(i);
+            isStock[i] = investment instanceof Stock;
+            symbols[i] = investment.getSymbol();
+            names[i] = investment.getName();
+            quantities[i] = investment.getQuantity();
+            prices[i] = investment.getPrice();
+            bookValues[i] = investment.getBookValue();
+            saleValues[i] = investment.calculateSaleValue();
+        }
+    }
+
+    /**
+     * Writes the report and prints how many records were exported.
+     */
+    @Override
+    public void run() {
+        try {
+            long records = export();
+            System.out.println("\nExport finished: " + records + " records written to "
+                    + (destination.equals("-") ? "standard output" : destination) + ".");
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("\nError exporting to " + destination + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the report.
+     *
+     * @return The number of records written.
+     * @throws IOException If the destination cannot be written.
+     */
+    public long export() throws IOException {
+        boolean toStandardOutput = destination.equals("-");
+        OutputStream output = toStandardOutput ? System.out : new FileOutputStream(destination, false);
+        Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long records = 0;
+
+        try {
+            if (format == Format.CSV) {
+                String[] columns = report == Report.GAINS ? GAINS_COLUMNS : HOLDINGS_COLUMNS;
+                line.setLength(0);
+                for (int c = 0; c < columns.length; c++) {
+                    line.append(c == 0 ? "" : ",").append(columns[c]);
+                }
+                writeLine(out);
+            }
+
+            for (int i = 0; i < size; i++) {
+                appendRecord(isStock[i], symbols[i], names[i], quantities[i], prices[i], bookValues[i], saleValues[i]);
+                writeLine(out);
+                records++;
+            }
+
+            if (fileRecords != null) {
+                try (Stream<Investment> stream = fileRecords) {
+                    for (Investment investment : (Iterable<Investment>) stream::iterator) {
+                        appendRecord(investment instanceof Stock, investment.getSymbol(), investment.getName(),
+                                investment.getQuantity(), investment.getPrice(), investment.getBookValue(),
+                                investment.calculateSaleValue());
+                        writeLine(out);
+                        records++;
+                    }
+                }
+            }
+        } finally {
+            // Never close standard output, only flush it
+            if (toStandardOutput) {
+                out.flush();
+            } else {
+                out.close();
+            }
+        }
+        return records;
+    }
+
+
+    //helper methods
+
+    /**
+     * Formats one record into the line buffer.
+     */
+    private void appendRecord(boolean stock, String symbol, String name, int quantity, double price, double bookValue, double saleValue) {
+        String[] columns = report == Report.GAINS ? GAINS_COLUMNS : HOLDINGS_COLUMNS;
+        line.setLength(0);
+        if (format == Format.JSON) {
+            line.append('{');
+        }
+
+        appendField(columns, 0);
+        appendText(stock ? "stock" : "mutualfund");
+        appendField(columns, 1);
+        appendText(symbol);
+        appendField(columns, 2);
+        appendText(name);
+        appendField(columns, 3);
+        line.append(quantity);
+        appendField(columns, 4);
+        appendMoney(price);
+        appendField(columns, 5);
+        appendMoney(bookValue);
+        if (report == Report.GAINS) {
+            appendField(columns, 6);
+            appendMoney(saleValue);
+            appendField(columns, 7);
+            appendMoney(saleValue - bookValue);
+        }
+
+        if (format == Format.JSON) {
+            line.append('}');
+        }
+    }
+
+    /**
+     * Appends the separator and, for JSON, the key of the given column.
+     */
+    private void appendField(String[] columns, int column) {
+        if (column > 0) {
+            line.append(',');
+        }
+        if (format == Format.JSON) {
+            line.append('"').append(columns[column]).append("\":");
+        }
+    }
+
+    /**
+     * Appends a text value, quoted and escaped for the output format.
+     */
+    private void appendText(String text) {
+        if (format == Format.JSON) {
+            line.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c < 0x20) {
+                    line.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                } else {
+                    line.append(c);
+                }
+            }
+            line.append('"');
+        } else if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0) {
+            line.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        } else {
+            line.append(text);
+        }
+    }
+
+    /**
+     * Appends an amount with two decimals, without going through String.format.
+     */
+    private void appendMoney(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            line.append(format == Format.JSON ? "null" : "");
+            return;
+        }
+        long cents = Math.round(amount * 100);
+        if (cents < 0) {
+            line.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        line.append(cents / 100).append('.');
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    /**
+     * Copies the line buffer into the reused character array and writes it with a line break.
+     */
+    private void writeLine(Writer out) throws IOException {
+        line.append('\n');
+        int length = line.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        line.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+    }
+}
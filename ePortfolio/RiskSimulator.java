@@ -0,0 +1,183 @@
+package ePortfolio;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * The RiskSimulator class estimates the value at risk of a portfolio with a Monte Carlo simulation.
+ * Each scenario moves every position's price along a geometric Brownian motion over the horizon,
+ * driven by one shared market factor and one factor of its own, and records the gain of the
+ * whole portfolio, of its stocks and of its mutual funds.
+ * <p>
+ * Positions are copied into primitive arrays before the run. Scenarios are split into fixed-size
+ * chunks that run in parallel, each with its own random generator split from the seed in chunk order,
+ * so the results depend only on the seed and not on the number of cores.
+ * Results are written straight into preallocated arrays, so the simulation loop does not allocate.
+ */
+
+public class RiskSimulator {
+
+    /** Expected yearly return of stocks. */
+    public static final double STOCK_DRIFT = 0.07;
+    /** Yearly volatility of stocks. */
+    public static final double STOCK_VOLATILITY = 0.20;
+    /** Expected yearly return of mutual funds. */
+    public static final double FUND_DRIFT = 0.05;
+    /** Yearly volatility of mutual funds. */
+    public static final double FUND_VOLATILITY = 0.12;
+    /** Correlation of each position with the shared market factor. */
+    public static final double MARKET_CORRELATION = 0.5;
+    /** Trading days in a year. */
+    public static final double TRADING_DAYS = 252;
+
+    /** Number of scenarios each parallel task simulates. */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final double[] values;
+    private final boolean[] isStock;
+
+    /**
+     * Constructs a simulator over a snapshot of the positions.
+     *
+     * @param values The market value (quantity times price) of each position.
+     * @param isStock Whether each position is a stock (true) or a mutual fund (false).
+     */
+    public RiskSimulator(double[] values, boolean[] isStock) {
+        this.values = values.clone();
+        this.isStock = isStock.clone();
+    }
+
+    /**
+     * The distribution of gains for one group of positions.
+     */
+    public static final class Distribution {
+        private final double[] sortedGains;
+
+        private Distribution(double[] gains) {
+            Arrays.parallelSort(gains);
+            this.sortedGains = gains;
+        }
+
+        /**
+         * Returns the gain at the given percentile of the scenarios.
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return The gain at that percentile.
+         */
+        public double percentile(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * sortedGains.length) - 1;
+            return sortedGains[Math.max(0, Math.min(sortedGains.length - 1, index))];
+        }
+
+        /**
+         * Returns the value at risk: the loss that is not exceeded with the given confidence.
+         *
+         * @param confidence The confidence level, for example 0.95.
+         * @return The value at risk, as a positive amount for a loss.
+         */
+        public double valueAtRisk(double confidence) {
+            return -percentile((1 - confidence) * 100);
+        }
+
+        /**
+         * Returns the conditional value at risk: the average loss in the scenarios beyond the value at risk.
+         *
+         * @param confidence The confidence level, for example 0.95.
+         * @return The conditional value at risk, as a positive amount for a loss.
+         */
+        public double conditionalValueAtRisk(double confidence) {
+            int tail = Math.max(1, (int) Math.ceil((1 - confidence) * sortedGains.length));
+            double sum = 0;
+            for (int i = 0; i < tail; i++) {
+                sum += sortedGains[i];
+            }
+            return -sum / tail;
+        }
+
+        /**
+         * Returns the average gain over all scenarios.
+         *
+         * @return The mean gain.
+         */
+        public double mean() {
+            double sum = 0;
+            for (double gain : sortedGains) {
+                sum += gain;
+            }
+            return sum / sortedGains.length;
+        }
+    }
+
+    /**
+     * The results of a simulation for the whole portfolio and for each investment type.
+     */
+    public static final class Result {
+        private final Distribution total;
+        private final Distribution stocks;
+        private final Distribution mutualFunds;
+
+        private Result(double[] total, double[] stocks, double[] mutualFunds) {
+            this.total = new Distribution(total);
+            this.stocks = new Distribution(stocks);
+            this.mutualFunds = new Distribution(mutualFunds);
+        }
+
+        // Getters
+        public Distribution getTotal() { return total; }
+        public Distribution getStocks() { return stocks; }
+        public Distribution getMutualFunds() { return mutualFunds; }
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @param scenarios The number of scenarios to simulate.
+     * @param horizonDays The horizon of each scenario in trading days.
+     * @param seed The seed; the same seed always gives the same results.
+     * @return The gain distributions.
+     */
+    public Result simulate(int scenarios, int horizonDays, long seed) {
+        double years = horizonDays / TRADING_DAYS;
+        double stockDrift = (STOCK_DRIFT - 0.5 * STOCK_VOLATILITY * STOCK_VOLATILITY) * years;
+        double stockShock = STOCK_VOLATILITY * Math.sqrt(years);
+        double fundDrift = (FUND_DRIFT - 0.5 * FUND_VOLATILITY * FUND_VOLATILITY) * years;
+        double fundShock = FUND_VOLATILITY * Math.sqrt(years);
+        double ownWeight = Math.sqrt(1 - MARKET_CORRELATION * MARKET_CORRELATION);
+
+        double[] total = new double[scenarios];
+        double[] stocks = new double[scenarios];
+        double[] mutualFunds = new double[scenarios];
+
+        // Split one generator per chunk in a fixed order so the run is reproducible
+        int chunks = (scenarios + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            randoms[c] = root.split();
+        }
+
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            SplittableRandom random = randoms[c];
+            int end = Math.min(scenarios, (c + 1) * CHUNK_SIZE);
+            for (int s = c * CHUNK_SIZE; s < end; s++) {
+                double market = random.nextGaussian();
+                double stockGain = 0;
+                double fundGain = 0;
+                for (int i = 0; i < values.length; i++) {
+                    double z = MARKET_CORRELATION * market + ownWeight * random.nextGaussian();
+                    if (isStock[i]) {
+                        stockGain += values[i] * Math.expm1(stockDrift + stockShock * z);
+                    } else {
+                        fundGain += values[i] * Math.expm1(fundDrift + fundShock * z);
+                    }
+                }
+                stocks[s] = stockGain;
+                mutualFunds[s] = fundGain;
+                total[s] = stockGain + fundGain;
+            }
+        });
+
+        return new Result(total, stocks, mutualFunds);
+    }
+}
@@ -68,6 +68,16 @@ public class Stock extends Investment {
         return quantity * price + COMMISSION;
     }
 
+    /**
+     * Calculates the amount received by selling all shares at the current price, after the commission.
+     * 
+     * @return The value of the stock at the current price.
+     */
+    @Override
+    public double calculateSaleValue() {
+        return super.calculateSaleValue() - COMMISSION;
+    }
+
     /**
      * Calculates the gain or loss for the stock investment, including the commission.
      * The gain is calculated as the new payment minus the book value, adjusted by the commission.